@@ -0,0 +1,46 @@
+package com.umirtech.permissionmanager;
+
+import android.app.Activity;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+/**
+ * {@link PermissionChecker} backed by {@link ContextCompat#checkSelfPermission} and
+ * {@link ActivityCompat#shouldShowRequestPermissionRationale}, every call is a Binder round
+ * trip to the package manager.
+ */
+public class AndroidPermissionChecker implements PermissionChecker
+{
+    private final Context context;
+
+    public AndroidPermissionChecker(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public int checkPermission(@NonNull String permission)
+    {
+        return ContextCompat.checkSelfPermission(context, permission);
+    }
+
+    @NonNull
+    @Override
+    public int[] checkAll(@NonNull String[] permissions)
+    {
+        int[] results = new int[permissions.length];
+        for (int i = 0; i < permissions.length; i++)
+        {
+            results[i] = ContextCompat.checkSelfPermission(context, permissions[i]);
+        }
+        return results;
+    }
+
+    @Override
+    public boolean shouldShowRequestPermissionRationale(@NonNull Activity activity, @NonNull String permission)
+    {
+        return ActivityCompat.shouldShowRequestPermissionRationale(activity, permission);
+    }
+}
@@ -0,0 +1,115 @@
+package com.umirtech.permissionmanager;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Records frame intervals while a slide transition runs, a frame taking longer than
+ * 1.5 refresh intervals is counted as janky. Enable the logs with
+ * {@code adb shell setprop log.tag.PermissionManager DEBUG}.
+ */
+final class FrameTimeTracker implements Choreographer.FrameCallback
+{
+    private static final String TAG = "PermissionManager";
+    private static final float JANK_THRESHOLD = 1.5f;
+
+    private final String name;
+    private long frameIntervalNanos = 16_666_667L;
+    private long startTimeNanos;
+    private long lastFrameTimeNanos;
+    private long durationNanos;
+    private long maxFrameTimeNanos;
+    private int frameCount;
+    private int jankyFrameCount;
+    private boolean isTracking = false;
+
+    FrameTimeTracker(String name)
+    {
+        this.name = name;
+    }
+
+    void start(float refreshRate)
+    {
+        if (isTracking)
+        {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        if (refreshRate > 0)
+        {
+            frameIntervalNanos = (long) (1_000_000_000L / refreshRate);
+        }
+        startTimeNanos = System.nanoTime();
+        lastFrameTimeNanos = 0;
+        durationNanos = 0;
+        maxFrameTimeNanos = 0;
+        frameCount = 0;
+        jankyFrameCount = 0;
+        isTracking = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * @return false if nothing was being tracked.
+     */
+    boolean stop()
+    {
+        if (!isTracking)
+        {
+            return false;
+        }
+        isTracking = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        durationNanos = System.nanoTime() - startTimeNanos;
+
+        if (Log.isLoggable(TAG, Log.DEBUG))
+        {
+            Log.d(TAG, name + ": " + frameCount + " frames in " + durationNanos / 1_000_000 + "ms, "
+                    + jankyFrameCount + " janky, worst " + maxFrameTimeNanos / 1_000_000 + "ms");
+        }
+        return true;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        if (!isTracking)
+        {
+            return;
+        }
+        if (lastFrameTimeNanos != 0)
+        {
+            long frameTime = frameTimeNanos - lastFrameTimeNanos;
+            frameCount++;
+            if (frameTime > maxFrameTimeNanos)
+            {
+                maxFrameTimeNanos = frameTime;
+            }
+            if (frameTime > frameIntervalNanos * JANK_THRESHOLD)
+            {
+                jankyFrameCount++;
+            }
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    long getDurationNanos()
+    {
+        return durationNanos;
+    }
+
+    long getMaxFrameTimeNanos()
+    {
+        return maxFrameTimeNanos;
+    }
+
+    int getFrameCount()
+    {
+        return frameCount;
+    }
+
+    int getJankyFrameCount()
+    {
+        return jankyFrameCount;
+    }
+}
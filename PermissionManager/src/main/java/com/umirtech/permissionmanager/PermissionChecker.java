@@ -0,0 +1,35 @@
+package com.umirtech.permissionmanager;
+
+import android.app.Activity;
+import android.content.pm.PackageManager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Source of grant state for the permission flow. The default implementation asks the package
+ * manager, tests and benchmarks can plug in an in-memory one, and production code can wrap it
+ * with its own caching or batching. Implementations may be called from a background thread.
+ */
+public interface PermissionChecker
+{
+    /**
+     * @return {@link PackageManager#PERMISSION_GRANTED} or {@link PackageManager#PERMISSION_DENIED}
+     */
+    int checkPermission(@NonNull String permission);
+
+    /**
+     * Bulk variant of {@link #checkPermission(String)}, result i belongs to permission i.
+     */
+    @NonNull
+    int[] checkAll(@NonNull String[] permissions);
+
+    boolean shouldShowRequestPermissionRationale(@NonNull Activity activity, @NonNull String permission);
+
+    /**
+     * Called when a request result arrived for the permission, a checker that caches grant
+     * state has to drop what it holds for it. Nothing to do for checkers that always ask.
+     */
+    default void onPermissionChanged(@NonNull String permission)
+    {
+    }
+}
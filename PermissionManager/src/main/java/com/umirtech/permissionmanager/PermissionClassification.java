@@ -0,0 +1,165 @@
+package com.umirtech.permissionmanager;
+
+import android.Manifest;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Permission classification table built once at class init. Maps a permission to the
+ * companions that count as a partial grant of it (READ_MEDIA_VISUAL_USER_SELECTED for the
+ * media permissions, approximate for precise location...), to the permissions one of which
+ * must be granted before it can be asked, to those that must share its system dialog, and to
+ * the group it is asked with in batch mode. Rules that don't apply to this device's API level
+ * are never stored, so every lookup is a single hash probe.
+ */
+final class PermissionClassification
+{
+    private static final ConcurrentHashMap<String, String[]> PARTIAL_GRANT_COMPANIONS = new ConcurrentHashMap<>();
+    private static final HashMap<String, String[]> PREREQUISITES = new HashMap<>();
+    private static final HashMap<String, String[]> CO_REQUESTS = new HashMap<>();
+    private static final HashMap<String, String[]> DOWNGRADE_COMPANIONS = new HashMap<>();
+    private static final HashMap<String, Integer> MIN_SDK_VERSIONS = new HashMap<>();
+    private static final HashMap<String, Integer> MAX_SDK_VERSIONS = new HashMap<>();
+    private static final HashMap<String, String> REQUEST_GROUPS = new HashMap<>();
+
+    static {
+        REQUEST_GROUPS.put(Manifest.permission.CAMERA, "capture");
+        REQUEST_GROUPS.put(Manifest.permission.RECORD_AUDIO, "capture");
+        REQUEST_GROUPS.put(Manifest.permission.READ_MEDIA_IMAGES, "media");
+        REQUEST_GROUPS.put(Manifest.permission.READ_MEDIA_VIDEO, "media");
+        REQUEST_GROUPS.put(Manifest.permission.READ_MEDIA_AUDIO, "media");
+        REQUEST_GROUPS.put(Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED, "media");
+        REQUEST_GROUPS.put(Manifest.permission.READ_EXTERNAL_STORAGE, "storage");
+        REQUEST_GROUPS.put(Manifest.permission.WRITE_EXTERNAL_STORAGE, "storage");
+        REQUEST_GROUPS.put(Manifest.permission.ACCESS_FINE_LOCATION, "location");
+        REQUEST_GROUPS.put(Manifest.permission.ACCESS_COARSE_LOCATION, "location");
+        REQUEST_GROUPS.put(Manifest.permission.READ_CONTACTS, "contacts");
+        REQUEST_GROUPS.put(Manifest.permission.WRITE_CONTACTS, "contacts");
+        REQUEST_GROUPS.put(Manifest.permission.READ_CALENDAR, "calendar");
+        REQUEST_GROUPS.put(Manifest.permission.WRITE_CALENDAR, "calendar");
+
+        //// Runtime permissions that don't exist below these levels, asking them fails at once ////
+        MIN_SDK_VERSIONS.put(Manifest.permission.ANSWER_PHONE_CALLS, Build.VERSION_CODES.O);
+        MIN_SDK_VERSIONS.put(Manifest.permission.READ_PHONE_NUMBERS, Build.VERSION_CODES.O);
+        MIN_SDK_VERSIONS.put(Manifest.permission.ACCESS_BACKGROUND_LOCATION, Build.VERSION_CODES.Q);
+        MIN_SDK_VERSIONS.put(Manifest.permission.ACCESS_MEDIA_LOCATION, Build.VERSION_CODES.Q);
+        MIN_SDK_VERSIONS.put(Manifest.permission.ACTIVITY_RECOGNITION, Build.VERSION_CODES.Q);
+        MIN_SDK_VERSIONS.put(Manifest.permission.BLUETOOTH_SCAN, Build.VERSION_CODES.S);
+        MIN_SDK_VERSIONS.put(Manifest.permission.BLUETOOTH_CONNECT, Build.VERSION_CODES.S);
+        MIN_SDK_VERSIONS.put(Manifest.permission.BLUETOOTH_ADVERTISE, Build.VERSION_CODES.S);
+        MIN_SDK_VERSIONS.put(Manifest.permission.UWB_RANGING, Build.VERSION_CODES.S);
+        MIN_SDK_VERSIONS.put(Manifest.permission.POST_NOTIFICATIONS, Build.VERSION_CODES.TIRAMISU);
+        MIN_SDK_VERSIONS.put(Manifest.permission.READ_MEDIA_IMAGES, Build.VERSION_CODES.TIRAMISU);
+        MIN_SDK_VERSIONS.put(Manifest.permission.READ_MEDIA_VIDEO, Build.VERSION_CODES.TIRAMISU);
+        MIN_SDK_VERSIONS.put(Manifest.permission.READ_MEDIA_AUDIO, Build.VERSION_CODES.TIRAMISU);
+        MIN_SDK_VERSIONS.put(Manifest.permission.NEARBY_WIFI_DEVICES, Build.VERSION_CODES.TIRAMISU);
+        MIN_SDK_VERSIONS.put(Manifest.permission.BODY_SENSORS_BACKGROUND, Build.VERSION_CODES.TIRAMISU);
+        MIN_SDK_VERSIONS.put(Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED, Build.VERSION_CODES.UPSIDE_DOWN_CAKE);
+
+        //// Retired above these levels, the system denies them without a dialog ////
+        MAX_SDK_VERSIONS.put(Manifest.permission.READ_EXTERNAL_STORAGE, Build.VERSION_CODES.S_V2);
+        MAX_SDK_VERSIONS.put(Manifest.permission.WRITE_EXTERNAL_STORAGE, Build.VERSION_CODES.Q);
+
+        //// Android 14 lets the user pick a subset of photos and videos ////
+        registerPartialAccessRule(Manifest.permission.READ_MEDIA_IMAGES, Build.VERSION_CODES.UPSIDE_DOWN_CAKE,
+                Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED);
+        registerPartialAccessRule(Manifest.permission.READ_MEDIA_VIDEO, Build.VERSION_CODES.UPSIDE_DOWN_CAKE,
+                Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED);
+
+        //// Android 12 lets the user downgrade precise location to approximate ////
+        registerPartialAccessRule(Manifest.permission.ACCESS_FINE_LOCATION, Build.VERSION_CODES.S,
+                Manifest.permission.ACCESS_COARSE_LOCATION);
+
+        //// Precise location must be asked along with approximate since Android 12 ////
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
+        {
+            CO_REQUESTS.put(Manifest.permission.ACCESS_FINE_LOCATION, new String[]{Manifest.permission.ACCESS_COARSE_LOCATION});
+        }
+        //// Background location is only offered once some foreground location is granted, and
+        //// denying it keeps "only while using the app" ////
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+        {
+            String[] foregroundLocation = {Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION};
+            PREREQUISITES.put(Manifest.permission.ACCESS_BACKGROUND_LOCATION, foregroundLocation);
+            DOWNGRADE_COMPANIONS.put(Manifest.permission.ACCESS_BACKGROUND_LOCATION, foregroundLocation);
+        }
+    }
+
+    private PermissionClassification()
+    {
+    }
+
+    static void registerPartialAccessRule(@NonNull String permission, int minSdkVersion, @NonNull String... companions)
+    {
+        if (Build.VERSION.SDK_INT >= minSdkVersion)
+        {
+            PARTIAL_GRANT_COMPANIONS.put(permission, companions);
+        }
+    }
+
+    /**
+     * @return permissions that partially satisfy the given one on this device, null when
+     * there is no such rule.
+     */
+    @Nullable
+    static String[] getPartialGrantCompanions(String permission)
+    {
+        return PARTIAL_GRANT_COMPANIONS.get(permission);
+    }
+
+    /**
+     * @return permissions one of which must be granted before this one can be asked, null when
+     * it can be asked on its own.
+     */
+    @Nullable
+    static String[] getPrerequisites(String permission)
+    {
+        return PREREQUISITES.get(permission);
+    }
+
+    /**
+     * @return permissions the system only accepts in the same dialog as this one, null when it
+     * can be asked alone.
+     */
+    @Nullable
+    static String[] getCoRequests(String permission)
+    {
+        return CO_REQUESTS.get(permission);
+    }
+
+    /**
+     * Unlike partial grant companions these only count once the permission itself was denied in
+     * its dialog, they never keep it from being asked.
+     */
+    @Nullable
+    static String[] getDowngradeCompanions(String permission)
+    {
+        return DOWNGRADE_COMPANIONS.get(permission);
+    }
+
+    /**
+     * @return false for permissions that don't exist at this device's API level or were
+     * retired before it, they are either implied by another grant or simply not there.
+     */
+    static boolean isRequestable(String permission)
+    {
+        Integer minSdkVersion = MIN_SDK_VERSIONS.get(permission);
+        if (minSdkVersion != null && Build.VERSION.SDK_INT < minSdkVersion)
+        {
+            return false;
+        }
+        Integer maxSdkVersion = MAX_SDK_VERSIONS.get(permission);
+        return maxSdkVersion == null || Build.VERSION.SDK_INT <= maxSdkVersion;
+    }
+
+    @Nullable
+    static String getRequestGroup(String permission)
+    {
+        return REQUEST_GROUPS.get(permission);
+    }
+}
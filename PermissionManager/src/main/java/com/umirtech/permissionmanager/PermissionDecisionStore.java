@@ -0,0 +1,249 @@
+package com.umirtech.permissionmanager;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.content.ContextCompat;
+import androidx.core.util.AtomicFile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Outcome of the last system dialog of every permission, kept in a small binary file in the
+ * no backup directory since grants don't move to another device. Read once per process on the
+ * I/O executor, every change is written back there too with writes coalesced. The main thread
+ * never touches the file, decisions simply aren't known until the read is done.
+ */
+final class PermissionDecisionStore
+{
+    private static final String TAG = "PermissionManager";
+    private static final String FILE_NAME = "com.umirtech.permissionmanager.decisions";
+    private static final int FILE_VERSION = 1;
+
+    private static volatile PermissionDecisionStore instance;
+
+    private final Context appContext;
+    private final Executor ioExecutor;
+    private AtomicFile file;
+    private final ConcurrentHashMap<String, Decision> decisions = new ConcurrentHashMap<>();
+    private final AtomicBoolean isWritePending = new AtomicBoolean();
+    private final AtomicBoolean isLoadQueued = new AtomicBoolean();
+    private volatile boolean isLoaded = false;
+
+    private PermissionDecisionStore(Context appContext, Executor ioExecutor)
+    {
+        this.appContext = appContext;
+        this.ioExecutor = ioExecutor;
+    }
+
+    static PermissionDecisionStore getInstance(Context context, Executor ioExecutor)
+    {
+        PermissionDecisionStore store = instance;
+        if (store == null)
+        {
+            synchronized (PermissionDecisionStore.class)
+            {
+                store = instance;
+                if (store == null)
+                {
+                    Context appContext = context.getApplicationContext();
+                    store = new PermissionDecisionStore(appContext != null ? appContext : context, ioExecutor);
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Queues the read on the I/O executor, for flows that didn't go through it already.
+     */
+    void loadAsync()
+    {
+        if (!isLoaded && isLoadQueued.compareAndSet(false, true))
+        {
+            ioExecutor.execute(this::ensureLoaded);
+        }
+    }
+
+    /**
+     * Reads the file if that didn't happen yet, a single read of a few hundred bytes. Blocking,
+     * only called on the I/O executor.
+     */
+    @WorkerThread
+    void ensureLoaded()
+    {
+        if (isLoaded)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (isLoaded)
+            {
+                return;
+            }
+            try (DataInputStream input = new DataInputStream(getFile().openRead()))
+            {
+                if (input.readInt() == FILE_VERSION)
+                {
+                    int count = input.readInt();
+                    for (int i = 0; i < count; i++)
+                    {
+                        String permission = input.readUTF();
+                        Outcome outcome = Outcome.fromCode(input.readByte());
+                        long timestamp = input.readLong();
+                        if (outcome != null)
+                        {
+                            //// Decisions recorded while loading are newer, keep them ////
+                            decisions.putIfAbsent(permission, new Decision(outcome, timestamp));
+                        }
+                    }
+                }
+            }catch (FileNotFoundException ignored) {
+                // Nothing recorded yet
+            }catch (IOException e) {
+                Log.w(TAG, "Unreadable permission decisions, starting over", e);
+            }
+            isLoaded = true;
+        }
+    }
+
+    /**
+     * @return the recorded decision, null when there is none or the file wasn't read yet.
+     */
+    @Nullable
+    Decision getDecision(String permission)
+    {
+        if (!isLoaded)
+        {
+            loadAsync();
+        }
+        return decisions.get(permission);
+    }
+
+    boolean isPermanentlyDenied(String permission)
+    {
+        Decision decision = getDecision(permission);
+        return decision != null && decision.outcome == Outcome.PERMANENTLY_DENIED;
+    }
+
+    /**
+     * Doesn't wait for the file, the write merges what it holds and this decision wins.
+     */
+    void record(String permission, Outcome outcome)
+    {
+        Decision previous = decisions.get(permission);
+        if (previous != null && previous.outcome == outcome)
+        {
+            return;
+        }
+        decisions.put(permission, new Decision(outcome, System.currentTimeMillis()));
+        scheduleWrite();
+    }
+
+    private void scheduleWrite()
+    {
+        if (isWritePending.compareAndSet(false, true))
+        {
+            ioExecutor.execute(this::write);
+        }
+    }
+
+    @WorkerThread
+    private void write()
+    {
+        //// Never replace the file before its decisions were merged in ////
+        ensureLoaded();
+        isWritePending.set(false);
+        AtomicFile file = getFile();
+        FileOutputStream output = null;
+        try
+        {
+            output = file.startWrite();
+            DataOutputStream dataOutput = new DataOutputStream(output);
+            Map<String, Decision> snapshot = new HashMap<>(decisions);
+            dataOutput.writeInt(FILE_VERSION);
+            dataOutput.writeInt(snapshot.size());
+            for (Map.Entry<String, Decision> entry : snapshot.entrySet())
+            {
+                dataOutput.writeUTF(entry.getKey());
+                dataOutput.writeByte(entry.getValue().outcome.code);
+                dataOutput.writeLong(entry.getValue().timestamp);
+            }
+            dataOutput.flush();
+            file.finishWrite(output);
+        }catch (IOException e) {
+            Log.w(TAG, "Could not persist permission decisions", e);
+            if (output != null)
+            {
+                file.failWrite(output);
+            }
+        }
+    }
+
+    /**
+     * Resolving the no backup directory may create it, so it happens on first I/O.
+     */
+    @WorkerThread
+    private synchronized AtomicFile getFile()
+    {
+        if (file == null)
+        {
+            File directory = ContextCompat.getNoBackupFilesDir(appContext);
+            file = new AtomicFile(new File(directory, FILE_NAME));
+        }
+        return file;
+    }
+
+
+    enum Outcome
+    {
+        GRANTED(1),
+        DENIED(2),
+        PERMANENTLY_DENIED(3),
+        PARTIALLY_GRANTED(4);
+
+        private final byte code;
+
+        Outcome(int code) {
+            this.code = (byte) code;
+        }
+
+        @Nullable
+        static Outcome fromCode(byte code) {
+            for (Outcome outcome : values())
+            {
+                if (outcome.code == code)
+                {
+                    return outcome;
+                }
+            }
+            return null;
+        }
+    }
+
+
+    static final class Decision
+    {
+        final Outcome outcome;
+        final long timestamp;
+
+        Decision(Outcome outcome, long timestamp) {
+            this.outcome = outcome;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.umirtech.permissionmanager;
+
+import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures one PermissionManager's flows and forwards them to Trace and the optional
+ * {@link PermissionMetricsListener}. Synchronous steps use regular trace sections, steps that
+ * span several frames or leave the app use async sections.
+ */
+final class PermissionFlowMetrics
+{
+    private static final String TRACE_PRE_CHECK = "PermissionManager#preCheck";
+    private static final String TRACE_VIEW_CONSTRUCTION = "PermissionManager#viewConstruction";
+    private static final String TRACE_SLIDE = "PermissionManager#slide";
+    private static final String TRACE_SYSTEM_DIALOG = "PermissionManager#systemDialog";
+    private static final String TRACE_SETTINGS = "PermissionManager#settingsDetour";
+    private static final String TRACE_FLOW = "PermissionManager#flow";
+
+    private static final AtomicInteger NEXT_COOKIE = new AtomicInteger();
+
+    @Nullable
+    private volatile PermissionMetricsListener listener;
+
+    private int flowCookie;
+    private long flowStartNanos;
+    private boolean isFlowRunning = false;
+
+    private long dialogStartNanos;
+    private String[] dialogPermissions;
+
+    private long settingsStartNanos;
+    private String settingsPermission;
+
+    void setListener(@Nullable PermissionMetricsListener listener)
+    {
+        this.listener = listener;
+    }
+
+    void onFlowStarted()
+    {
+        if (isFlowRunning)
+        {
+            //// Shown again while running, after recreation or a merged request, it's the same flow ////
+            return;
+        }
+        isFlowRunning = true;
+        flowCookie = NEXT_COOKIE.incrementAndGet();
+        flowStartNanos = System.nanoTime();
+        TraceCompat.beginAsyncSection(TRACE_FLOW, flowCookie);
+    }
+
+    void onFlowCompleted(boolean granted)
+    {
+        if (!isFlowRunning)
+        {
+            return;
+        }
+        isFlowRunning = false;
+        TraceCompat.endAsyncSection(TRACE_FLOW, flowCookie);
+        PermissionMetricsListener listener = this.listener;
+        if (listener != null)
+        {
+            listener.onFlowCompleted(System.nanoTime() - flowStartNanos, granted);
+        }
+    }
+
+    /**
+     * Ends the trace sections of a flow whose activity is recreated, without reporting it.
+     *
+     * @return when the flow started, for {@link #onFlowResumed} of the recreated manager, or
+     * now if no flow is running.
+     */
+    long onFlowSuspended()
+    {
+        if (!isFlowRunning)
+        {
+            return System.nanoTime();
+        }
+        isFlowRunning = false;
+        if (dialogPermissions != null)
+        {
+            dialogPermissions = null;
+            TraceCompat.endAsyncSection(TRACE_SYSTEM_DIALOG, flowCookie);
+        }
+        if (settingsPermission != null)
+        {
+            settingsPermission = null;
+            TraceCompat.endAsyncSection(TRACE_SETTINGS, flowCookie);
+        }
+        TraceCompat.endAsyncSection(TRACE_FLOW, flowCookie);
+        return flowStartNanos;
+    }
+
+    /**
+     * The flow started by this manager continues one suspended before recreation, its duration
+     * counts from the original start.
+     */
+    void onFlowResumed(long startNanos)
+    {
+        if (isFlowRunning)
+        {
+            flowStartNanos = startNanos;
+        }
+    }
+
+    long beginPreCheck()
+    {
+        TraceCompat.beginSection(TRACE_PRE_CHECK);
+        return System.nanoTime();
+    }
+
+    void endPreCheck(long startNanos, int ipcCheckCount)
+    {
+        long duration = System.nanoTime() - startNanos;
+        TraceCompat.endSection();
+        PermissionMetricsListener listener = this.listener;
+        if (listener != null)
+        {
+            listener.onPreCheck(duration, ipcCheckCount);
+        }
+    }
+
+    long beginViewConstruction()
+    {
+        TraceCompat.beginSection(TRACE_VIEW_CONSTRUCTION);
+        return System.nanoTime();
+    }
+
+    void endViewConstruction(long startNanos)
+    {
+        long duration = System.nanoTime() - startNanos;
+        TraceCompat.endSection();
+        PermissionMetricsListener listener = this.listener;
+        if (listener != null)
+        {
+            listener.onViewConstructed(duration);
+        }
+    }
+
+    void onSlideStarted()
+    {
+        TraceCompat.beginAsyncSection(TRACE_SLIDE, flowCookie);
+    }
+
+    void onSlideFinished(FrameTimeTracker frameTimeTracker)
+    {
+        TraceCompat.endAsyncSection(TRACE_SLIDE, flowCookie);
+        PermissionMetricsListener listener = this.listener;
+        if (listener != null)
+        {
+            listener.onSlideAnimated(frameTimeTracker.getDurationNanos(), frameTimeTracker.getFrameCount(),
+                    frameTimeTracker.getJankyFrameCount(), frameTimeTracker.getMaxFrameTimeNanos());
+        }
+    }
+
+    void onSystemDialogLaunched(String[] permissions)
+    {
+        dialogPermissions = permissions;
+        dialogStartNanos = System.nanoTime();
+        TraceCompat.beginAsyncSection(TRACE_SYSTEM_DIALOG, flowCookie);
+    }
+
+    void onSystemDialogResult(boolean granted)
+    {
+        if (dialogPermissions == null)
+        {
+            return;
+        }
+        TraceCompat.endAsyncSection(TRACE_SYSTEM_DIALOG, flowCookie);
+        String[] permissions = dialogPermissions;
+        dialogPermissions = null;
+        PermissionMetricsListener listener = this.listener;
+        if (listener != null)
+        {
+            listener.onSystemDialog(permissions, System.nanoTime() - dialogStartNanos, granted);
+        }
+    }
+
+    void onSettingsOpened(String permission)
+    {
+        settingsPermission = permission;
+        settingsStartNanos = System.nanoTime();
+        TraceCompat.beginAsyncSection(TRACE_SETTINGS, flowCookie);
+    }
+
+    void onSettingsReturned()
+    {
+        if (settingsPermission == null)
+        {
+            return;
+        }
+        TraceCompat.endAsyncSection(TRACE_SETTINGS, flowCookie);
+        String permission = settingsPermission;
+        settingsPermission = null;
+        PermissionMetricsListener listener = this.listener;
+        if (listener != null)
+        {
+            listener.onSettingsDetour(permission, System.nanoTime() - settingsStartNanos);
+        }
+    }
+
+    /**
+     * @return the IPC counter to diff around a pre-check, -1 when it can't be known.
+     */
+    static int getIpcCheckCount(PermissionChecker permissionChecker)
+    {
+        if (permissionChecker instanceof PermissionStatusCache)
+        {
+            return ((PermissionStatusCache) permissionChecker).getDelegateCheckCount();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,220 @@
+package com.umirtech.permissionmanager;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A permission list compiled once into the order it is asked in. Duplicates and permissions
+ * this API level doesn't have are dropped, and entries are staged: everything that can be asked
+ * right away first, then the entries that depend on it (background location after foreground
+ * location). Immutable, so one plan can be kept and shown in any activity; the PermissionInfo
+ * entries must not be changed once compiled.
+ */
+public final class PermissionFlowPlan
+{
+    private final List<PermissionManager.PermissionInfo> steps;
+    private final HashSet<String> stepPermissions;
+
+    private PermissionFlowPlan(List<PermissionManager.PermissionInfo> steps, HashSet<String> stepPermissions)
+    {
+        this.steps = steps;
+        this.stepPermissions = stepPermissions;
+    }
+
+    @NonNull
+    public static PermissionFlowPlan compile(@NonNull List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        LinkedHashMap<String, PermissionManager.PermissionInfo> byPermission = new LinkedHashMap<>();
+        for (int i = 0; i < permissionsList.size(); i++)
+        {
+            PermissionManager.PermissionInfo permissionInfo = permissionsList.get(i);
+            //// POST_NOTIFICATIONS below 33 and alike, a dialog for them is rejected at once ////
+            if (PermissionClassification.isRequestable(permissionInfo.getPermission())
+                    && !byPermission.containsKey(permissionInfo.getPermission()))
+            {
+                byPermission.put(permissionInfo.getPermission(), permissionInfo);
+            }
+        }
+
+        //// Depth first over the tiny prerequisite graph keeps the caller's order otherwise ////
+        ArrayList<PermissionManager.PermissionInfo> steps = new ArrayList<>(byPermission.size());
+        HashSet<String> visited = new HashSet<>();
+        for (PermissionManager.PermissionInfo permissionInfo : byPermission.values())
+        {
+            addStep(permissionInfo, byPermission, visited, steps);
+        }
+
+        //// Stable sort, within a stage the caller's order stays ////
+        HashMap<String, Integer> stages = new HashMap<>();
+        for (int i = 0; i < steps.size(); i++)
+        {
+            stages.put(steps.get(i).getPermission(), computeStage(steps.get(i), stages));
+        }
+        Collections.sort(steps, (first, second) ->
+                Integer.compare(stages.get(first.getPermission()), stages.get(second.getPermission())));
+        return new PermissionFlowPlan(Collections.unmodifiableList(steps), new HashSet<>(byPermission.keySet()));
+    }
+
+    private static void addStep(PermissionManager.PermissionInfo permissionInfo, HashMap<String, PermissionManager.PermissionInfo> byPermission,
+                                HashSet<String> visited, ArrayList<PermissionManager.PermissionInfo> steps)
+    {
+        if (!visited.add(permissionInfo.getPermission()))
+        {
+            return;
+        }
+        String[] prerequisites = PermissionClassification.getPrerequisites(permissionInfo.getPermission());
+        if (prerequisites != null)
+        {
+            for (String prerequisite : prerequisites)
+            {
+                PermissionManager.PermissionInfo prerequisiteInfo = byPermission.get(prerequisite);
+                if (prerequisiteInfo != null)
+                {
+                    addStep(prerequisiteInfo, byPermission, visited, steps);
+                }
+            }
+        }
+        steps.add(permissionInfo);
+    }
+
+    /**
+     * Prerequisites come before their dependents in the depth first order, so their stage is
+     * already known.
+     */
+    private static int computeStage(PermissionManager.PermissionInfo permissionInfo, HashMap<String, Integer> stages)
+    {
+        int stage = 0;
+        String[] prerequisites = PermissionClassification.getPrerequisites(permissionInfo.getPermission());
+        if (prerequisites != null)
+        {
+            for (String prerequisite : prerequisites)
+            {
+                Integer prerequisiteStage = stages.get(prerequisite);
+                if (prerequisiteStage != null)
+                {
+                    stage = Math.max(stage, prerequisiteStage + 1);
+                }
+            }
+        }
+        return stage;
+    }
+
+    /**
+     * @return the entries in the order they are asked in.
+     */
+    @NonNull
+    public List<PermissionManager.PermissionInfo> getSteps()
+    {
+        return steps;
+    }
+
+    ArrayList<PermissionManager.PermissionInfo> collectMissing(PermissionStateSnapshot snapshot)
+    {
+        ArrayList<PermissionManager.PermissionInfo> missingPermissions = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++)
+        {
+            if (!snapshot.isSatisfied(steps.get(i)))
+            {
+                missingPermissions.add(steps.get(i));
+            }
+        }
+        return missingPermissions;
+    }
+
+
+    /////// State machine //////////
+
+    /**
+     * What the button of the current slide does.
+     */
+    enum Phase
+    {
+        NEXT,
+        ALLOW,
+        SETTINGS
+    }
+
+    /**
+     * What follows a system dialog result.
+     */
+    enum Transition
+    {
+        ADVANCE,
+        RETRY,
+        OPEN_SETTINGS
+    }
+
+    /**
+     * @return the first entry at or after from that still needs the user, pending.size() when
+     * none does. Entries whose prerequisites in this plan ended up denied are passed over, the
+     * system would reject their dialog at once.
+     */
+    int nextPendingIndex(List<PermissionManager.PermissionInfo> pending, int from, PermissionStateSnapshot snapshot)
+    {
+        int index = from;
+        while (index < pending.size()
+                && (snapshot.isSatisfied(pending.get(index)) || !isReachable(pending.get(index), snapshot)))
+        {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Prerequisites that aren't part of the plan are left to the system, the flow never asks
+     * them on its own.
+     */
+    boolean isReachable(PermissionManager.PermissionInfo permissionInfo, PermissionStateSnapshot snapshot)
+    {
+        String[] prerequisites = PermissionClassification.getPrerequisites(permissionInfo.getPermission());
+        if (prerequisites == null)
+        {
+            return true;
+        }
+        boolean hasPlannedPrerequisite = false;
+        for (String prerequisite : prerequisites)
+        {
+            if (stepPermissions.contains(prerequisite))
+            {
+                if (snapshot.isSatisfied(prerequisite))
+                {
+                    return true;
+                }
+                hasPlannedPrerequisite = true;
+            }
+        }
+        return !hasPlannedPrerequisite;
+    }
+
+    /**
+     * Slide shown for an entry: the settings screen when it was denied for good, the system
+     * dialog otherwise.
+     */
+    static Phase phaseFor(boolean isPermanentlyDenied)
+    {
+        return isPermanentlyDenied ? Phase.SETTINGS : Phase.ALLOW;
+    }
+
+    /**
+     * Optional entries never hold the flow back, a denial just moves on to the next one.
+     */
+    static Transition onResult(PermissionDecisionStore.Outcome outcome, boolean isOptional)
+    {
+        switch (outcome)
+        {
+            case GRANTED:
+            case PARTIALLY_GRANTED:
+                return Transition.ADVANCE;
+            case PERMANENTLY_DENIED:
+                return isOptional ? Transition.ADVANCE : Transition.OPEN_SETTINGS;
+            default:
+                return isOptional ? Transition.ADVANCE : Transition.RETRY;
+        }
+    }
+}
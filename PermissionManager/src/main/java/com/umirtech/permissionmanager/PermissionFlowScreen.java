@@ -0,0 +1,172 @@
+package com.umirtech.permissionmanager;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Everything the permission manager does with views: the screen itself, putting it in place
+ * of or above the activity content, the status bar and the slides. {@link PermissionManager}
+ * only reaches this class once something is missing, so verifying and running the all granted
+ * path never loads ConstraintLayout or the Material classes. Main thread only.
+ */
+final class PermissionFlowScreen
+{
+    /**
+     * The flow behind the screen.
+     */
+    interface Listener
+    {
+        void onButtonClicked();
+
+        /**
+         * Called while the slide is out of sight, the next one is set up here.
+         *
+         * @return false if the flow finished and no slide comes in.
+         */
+        boolean onSlideChanged();
+    }
+
+    private final PermissionManager.PermissionManagerView pManagerView;
+    private final PermissionManager.PermissionManagerView.OnSlideChangeListener slideChangeListener;
+
+    private Window window;
+    private ViewGroup rootView, contentView;
+    private int[] contentAccessibility;
+    private PermissionManager.DisplayMode attachedDisplayMode;
+    private int preStatusBarColor;
+
+    PermissionFlowScreen(Context context, PermissionManagerStyle style, PermissionFlowMetrics flowMetrics, Listener listener)
+    {
+        pManagerView = new PermissionManager.PermissionManagerView(context, style);
+        pManagerView.setFlowMetrics(flowMetrics);
+        pManagerView.setOnButtonClickListener(view -> listener.onButtonClicked());
+        slideChangeListener = (headerTextView, permissionInfoTextView) -> listener.onSlideChanged();
+    }
+
+    PermissionManagerStyle getStyle()
+    {
+        return pManagerView.getStyle();
+    }
+
+    void setAnimationProfile(PermissionManager.AnimationProfile animationProfile)
+    {
+        pManagerView.setAnimationProfile(animationProfile);
+    }
+
+    void attach(AppCompatActivity activity, PermissionManager.DisplayMode displayMode)
+    {
+        window = activity.getWindow();
+        preStatusBarColor = window.getStatusBarColor();
+        window.setStatusBarColor(getStyle().getPrimaryColor());
+
+        contentView = activity.findViewById(android.R.id.content);
+        ViewGroup.LayoutParams params = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        attachedDisplayMode = displayMode;
+        if (attachedDisplayMode == PermissionManager.DisplayMode.OVERLAY)
+        {
+            //// Stacked above the untouched content, the host hierarchy is never torn down ////
+            hideContentFromAccessibility();
+            contentView.addView(pManagerView,params);
+        }else {
+            rootView = (ViewGroup) contentView.getParent();
+            rootView.removeView(contentView);
+            rootView.addView(pManagerView,params);
+        }
+    }
+
+    void detach()
+    {
+        if (attachedDisplayMode == PermissionManager.DisplayMode.OVERLAY)
+        {
+            contentView.removeView(pManagerView);
+            restoreContentAccessibility();
+        }else {
+            rootView.removeView(pManagerView);
+            rootView.addView(contentView);
+        }
+        window.setStatusBarColor(preStatusBarColor);
+        rootView = null;
+        contentView = null;
+        window = null;
+    }
+
+    void showPermission(PermissionManager.PermissionInfo permissionInfo)
+    {
+        Context context = pManagerView.getContext();
+        pManagerView.setTexts(permissionInfo.resolvePermissionTag(context), permissionInfo.resolvePermissionInfo(context));
+    }
+
+    /**
+     * Button label of the phase.
+     */
+    void setPhase(PermissionFlowPlan.Phase phase)
+    {
+        CharSequence nextFabButtonText;
+        switch (phase)
+        {
+            case ALLOW:
+                nextFabButtonText = getStyle().getAllowText();
+                break;
+            case SETTINGS:
+                nextFabButtonText = getStyle().getSettingsText();
+                break;
+            default:
+                nextFabButtonText = getStyle().getNextText();
+                break;
+        }
+        pManagerView.setButtonText(nextFabButtonText);
+    }
+
+    /**
+     * Welcome texts in place again for a new flow, the button label is set with the phase.
+     */
+    void reset()
+    {
+        pManagerView.resetToWelcome();
+    }
+
+    void slideNext()
+    {
+        pManagerView.slideNext(slideChangeListener);
+    }
+
+    /**
+     * Drops the activity and the listener, the screen is not used again.
+     */
+    void release()
+    {
+        pManagerView.cancelSlide();
+        pManagerView.setOnButtonClickListener(null);
+        pManagerView.setFlowMetrics(null);
+        rootView = null;
+        contentView = null;
+        contentAccessibility = null;
+        window = null;
+    }
+
+    private void hideContentFromAccessibility()
+    {
+        int childCount = contentView.getChildCount();
+        contentAccessibility = new int[childCount];
+        for (int i = 0; i < childCount; i++)
+        {
+            View child = contentView.getChildAt(i);
+            contentAccessibility[i] = child.getImportantForAccessibility();
+            child.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS);
+        }
+    }
+
+    private void restoreContentAccessibility()
+    {
+        int childCount = Math.min(contentView.getChildCount(), contentAccessibility.length);
+        for (int i = 0; i < childCount; i++)
+        {
+            contentView.getChildAt(i).setImportantForAccessibility(contentAccessibility[i]);
+        }
+        contentAccessibility = null;
+    }
+}
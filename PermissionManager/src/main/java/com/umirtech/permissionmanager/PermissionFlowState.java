@@ -0,0 +1,201 @@
+package com.umirtech.permissionmanager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.SavedStateHandleSupport;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.lifecycle.viewmodel.CreationExtras;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * In-flight flow of an activity: which slide is shown and which permissions were missing when
+ * it started. The position lives in the SavedStateHandle and survives process death, the
+ * resolved grant snapshot only survives configuration changes since grants may have changed
+ * while the process was gone.
+ */
+final class PermissionFlowState extends ViewModel
+{
+    private static final String VIEW_MODEL_KEY = "com.umirtech.permissionmanager.flow";
+    private static final String KEY_PERMISSIONS = "permissions";
+    private static final String KEY_MISSING_PERMISSIONS = "missingPermissions";
+    private static final String KEY_INDEX = "index";
+    private static final String KEY_NEXT_ACTION = "isNextAction";
+    private static final String KEY_LAUNCHER = "launcherKey";
+
+    private static final ViewModelProvider.Factory FACTORY = new ViewModelProvider.Factory() {
+        @NonNull
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends ViewModel> T create(@NonNull Class<T> modelClass, @NonNull CreationExtras extras) {
+            return (T) new PermissionFlowState(SavedStateHandleSupport.createSavedStateHandle(extras));
+        }
+    };
+
+    private final SavedStateHandle savedStateHandle;
+    private PermissionStateSnapshot snapshot;
+    //// System.nanoTime of the flow start, like the snapshot it can't outlive the process ////
+    private Long flowStartNanos;
+
+    private PermissionFlowState(SavedStateHandle savedStateHandle)
+    {
+        this.savedStateHandle = savedStateHandle;
+    }
+
+    static PermissionFlowState of(AppCompatActivity activity)
+    {
+        return new ViewModelProvider(activity, FACTORY).get(VIEW_MODEL_KEY, PermissionFlowState.class);
+    }
+
+    /**
+     * @return true if a flow for exactly these permissions was interrupted by recreation.
+     */
+    boolean isInFlight(List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        String[] permissions = savedStateHandle.get(KEY_PERMISSIONS);
+        return permissions != null && Arrays.equals(permissions, toPermissions(permissionsList));
+    }
+
+    /**
+     * @return the snapshot kept across a configuration change, null after process death. Stale
+     * once the cache was invalidated meanwhile, for example by a return from settings.
+     */
+    @Nullable
+    PermissionStateSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Maps the saved missing permissions back onto the entries of the new caller's list.
+     */
+    ArrayList<PermissionManager.PermissionInfo> restoreMissingPermissions(List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        String[] missing = savedStateHandle.get(KEY_MISSING_PERMISSIONS);
+        HashMap<String, PermissionManager.PermissionInfo> byPermission = new HashMap<>();
+        for (int i = 0; i < permissionsList.size(); i++)
+        {
+            byPermission.put(permissionsList.get(i).getPermission(), permissionsList.get(i));
+        }
+        ArrayList<PermissionManager.PermissionInfo> missingPermissions = new ArrayList<>();
+        if (missing != null)
+        {
+            for (String permission : missing)
+            {
+                PermissionManager.PermissionInfo permissionInfo = byPermission.get(permission);
+                if (permissionInfo != null)
+                {
+                    missingPermissions.add(permissionInfo);
+                }
+            }
+        }
+        return missingPermissions;
+    }
+
+    void start(List<PermissionManager.PermissionInfo> permissionsList, List<PermissionManager.PermissionInfo> missingPermissions,
+               PermissionStateSnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+        savedStateHandle.set(KEY_PERMISSIONS, toPermissions(permissionsList));
+        savedStateHandle.set(KEY_MISSING_PERMISSIONS, toPermissions(missingPermissions));
+        savedStateHandle.set(KEY_INDEX, 0);
+        savedStateHandle.set(KEY_NEXT_ACTION, true);
+    }
+
+    void setMissingPermissions(List<PermissionManager.PermissionInfo> missingPermissions)
+    {
+        savedStateHandle.set(KEY_MISSING_PERMISSIONS, toPermissions(missingPermissions));
+    }
+
+    void resume(PermissionStateSnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Keeps the start of a flow whose activity is recreated, the recreated manager measures
+     * the flow from there.
+     */
+    void suspend(long flowStartNanos)
+    {
+        this.flowStartNanos = flowStartNanos;
+    }
+
+    /**
+     * @return the start kept by {@link #suspend}, null after process death or if there is none.
+     */
+    @Nullable
+    Long takeFlowStartNanos()
+    {
+        Long flowStartNanos = this.flowStartNanos;
+        this.flowStartNanos = null;
+        return flowStartNanos;
+    }
+
+    void setPosition(int index, boolean isNextAction)
+    {
+        savedStateHandle.set(KEY_INDEX, index);
+        savedStateHandle.set(KEY_NEXT_ACTION, isNextAction);
+    }
+
+    int getIndex()
+    {
+        Integer index = savedStateHandle.get(KEY_INDEX);
+        return index != null ? index : 0;
+    }
+
+    boolean isNextAction()
+    {
+        Boolean isNextAction = savedStateHandle.get(KEY_NEXT_ACTION);
+        return isNextAction == null || isNextAction;
+    }
+
+    /**
+     * Stable across recreation, so a dialog result that arrives for the destroyed activity is
+     * delivered to the launcher of the new one.
+     */
+    String getLauncherKey()
+    {
+        String launcherKey = savedStateHandle.get(KEY_LAUNCHER);
+        if (launcherKey == null)
+        {
+            launcherKey = UUID.randomUUID().toString();
+            savedStateHandle.set(KEY_LAUNCHER, launcherKey);
+        }
+        return launcherKey;
+    }
+
+    void finish()
+    {
+        snapshot = null;
+        flowStartNanos = null;
+        savedStateHandle.remove(KEY_PERMISSIONS);
+        savedStateHandle.remove(KEY_MISSING_PERMISSIONS);
+        savedStateHandle.remove(KEY_INDEX);
+        savedStateHandle.remove(KEY_NEXT_ACTION);
+    }
+
+    @Override
+    protected void onCleared()
+    {
+        snapshot = null;
+        flowStartNanos = null;
+    }
+
+    private static String[] toPermissions(List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        String[] permissions = new String[permissionsList.size()];
+        for (int i = 0; i < permissions.length; i++)
+        {
+            permissions[i] = permissionsList.get(i).getPermission();
+        }
+        return permissions;
+    }
+}
@@ -1,10 +1,10 @@
 package com.umirtech.permissionmanager;
 
-import android.Manifest;
 import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
-import android.animation.PropertyValuesHolder;
-import android.app.Activity;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -13,236 +13,929 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
 import android.graphics.Shader;
-import android.graphics.Typeface;
-import android.graphics.drawable.GradientDrawable;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.Window;
 import android.view.animation.AnticipateInterpolator;
 import android.view.animation.Interpolator;
 import android.view.animation.OvershootInterpolator;
 import android.widget.TextView;
 
-import androidx.activity.result.ActivityResultLauncher;
-import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.StringRes;
+import androidx.annotation.VisibleForTesting;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.constraintlayout.widget.Constraints;
-import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
 
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class PermissionManager {
-    private final Context context;
-    private ActivityResultLauncher<String> requestPermissionLauncher;
-    private final PermissionManagerView pManagerView;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final Executor EVALUATION_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PermissionManager-evaluation");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private PermissionManagerView.OnSlideChangeListener slideChangeListener;
+    private final Context appContext;
+    private final WeakReference<Context> contextReference;
+    private PermissionFlowScreen screen;
 
     private PermissionInfo selectedPermissionInfo;
+    private PermissionStateSnapshot permissionStateSnapshot;
+    private PermissionFlowState flowState;
+    private PermissionRequestCoordinator coordinator;
+    private List<PermissionInfo> missingPermissions;
+    private PermissionResultCallBack resultCallBack;
+
+    private DisplayMode displayMode = DisplayMode.REPLACE_CONTENT;
 
     private int index = 0;
-    private int preStatusBarColor;
 
-    private boolean isNextAction = true;
+    private PermissionFlowPlan flowPlan;
+    private PermissionFlowPlan.Phase phase = PermissionFlowPlan.Phase.NEXT;
+    private boolean isBatchRequestEnabled = false;
+    private AnimationProfile animationProfile = AnimationProfile.NORMAL;
+    private PermissionManagerStyle style;
+    private PermissionChecker permissionChecker;
+    private PermissionDecisionStore decisionStore;
+    private final PermissionFlowMetrics flowMetrics = new PermissionFlowMetrics();
+    private SettingsReturnObserver settingsReturnObserver;
+    private ActivityLifecycleObserver lifecycleObserver;
 
     public PermissionManager(Context context) {
-        this.context = context;
-        pManagerView = new PermissionManagerView(context);
+        Context applicationContext = context.getApplicationContext();
+        this.appContext = applicationContext != null ? applicationContext : context;
+        //// Only the process wide state keeps the application context, the activity may go ////
+        this.contextReference = new WeakReference<>(context);
+    }
+
+    /**
+     * When enabled, related permissions (camera and microphone, media, location...) that are
+     * still missing are asked in one system dialog instead of one dialog per slide.
+     */
+    public void setBatchRequestEnabled(boolean batchRequestEnabled)
+    {
+        isBatchRequestEnabled = batchRequestEnabled;
+    }
+
+    /**
+     * Slide timing, {@link AnimationProfile#NONE} switches slides without animating. Durations
+     * are still scaled by the system animator duration scale, and a scale of zero behaves
+     * like NONE.
+     */
+    public void setAnimationProfile(@NonNull AnimationProfile animationProfile)
+    {
+        this.animationProfile = animationProfile;
+        if (screen != null)
+        {
+            screen.setAnimationProfile(animationProfile);
+        }
+    }
+
+    /**
+     * {@link DisplayMode#OVERLAY} shows the permission manager above the activity content
+     * instead of swapping it out, which saves the two full relayouts of the host screen and
+     * keeps its focus and view state.
+     */
+    public void setDisplayMode(@NonNull DisplayMode displayMode)
+    {
+        this.displayMode = displayMode;
+    }
+
+    /**
+     * Colors, sizes and texts of the screen, {@link PermissionManagerStyle#getDefault} when not
+     * set. Applies from the next time the screen is built, a running flow keeps its look.
+     */
+    public void setStyle(@NonNull PermissionManagerStyle style)
+    {
+        this.style = style;
+        if (screen != null && screen.getStyle() != style && !isFlowRunning())
+        {
+            screen.release();
+            screen = null;
+        }
+    }
+
+    /**
+     * Replaces the process wide cached package manager checker, for example with an in-memory
+     * fake on the JVM or a batched implementation. The checker must be safe to call from a
+     * background thread when {@link #showPermissionManagerAsync} is used.
+     */
+    public void setPermissionChecker(@NonNull PermissionChecker permissionChecker)
+    {
+        this.permissionChecker = permissionChecker;
+    }
+
+    /**
+     * Receives pre-check, view construction, slide, system dialog, settings and total flow
+     * timings. The same timings are always emitted as trace sections, the listener is only
+     * needed to aggregate them in the field.
+     */
+    public void setMetricsListener(@Nullable PermissionMetricsListener metricsListener)
+    {
+        flowMetrics.setListener(metricsListener);
+    }
+
+    private PermissionChecker getPermissionChecker()
+    {
+        if (permissionChecker == null)
+        {
+            permissionChecker = PermissionStatusCache.getInstance(appContext);
+        }
+        return permissionChecker;
+    }
+
+    private PermissionDecisionStore getDecisionStore()
+    {
+        if (decisionStore == null)
+        {
+            decisionStore = PermissionDecisionStore.getInstance(appContext, EVALUATION_EXECUTOR);
+        }
+        return decisionStore;
+    }
+
+    @Nullable
+    private AppCompatActivity getActivity()
+    {
+        Context context = contextReference.get();
+        return context instanceof AppCompatActivity ? (AppCompatActivity) context : null;
+    }
+
+    /**
+     * Resolves grant state in the background and warms up the permission manager view classes,
+     * call it from Application.onCreate or a splash screen. A later showPermissionManager with
+     * the same permissions then skips the synchronous IPC, and passing the same list also skips
+     * compiling the plan again.
+     */
+    public static void prefetch(@NonNull Context context, @NonNull List<PermissionInfo> permissionsList)
+    {
+        PermissionStatusCache cache = PermissionStatusCache.getInstance(context);
+        PermissionDecisionStore decisionStore = PermissionDecisionStore.getInstance(context, EVALUATION_EXECUTOR);
+        EVALUATION_EXECUTOR.execute(() -> {
+            PermissionPrefetcher.prefetch(cache, permissionsList);
+            decisionStore.ensureLoaded();
+            //// Style of the application theme off the main thread too, other themes resolve their own ////
+            PermissionManagerStyle.getDefault(context);
+        });
+    }
+
+    /**
+     * Subscribes to grant state changes instead of polling checkSelfPermission. Updates come
+     * from request results, settings returns and one re-check of the observed permissions when
+     * the app returns to foreground. Call from the main thread, adding the same listener again
+     * replaces its permissions. State resolved through a custom {@link PermissionChecker} is not
+     * published.
+     */
+    public static void addPermissionStateListener(@NonNull Context context, @NonNull PermissionStateListener listener,
+                                                  @NonNull String... permissions)
+    {
+        PermissionStatusCache cache = PermissionStatusCache.getInstance(context);
+        PermissionStatePublisher.getInstance(cache, EVALUATION_EXECUTOR).addListener(listener, permissions.clone());
+    }
+
+    public static void removePermissionStateListener(@NonNull Context context, @NonNull PermissionStateListener listener)
+    {
+        PermissionStatusCache cache = PermissionStatusCache.getInstance(context);
+        PermissionStatePublisher.getInstance(cache, EVALUATION_EXECUTOR).removeListener(listener);
+    }
+
+    /**
+     * Declares that granting any of the companions counts as a partial grant of the permission
+     * on devices running at least minSdkVersion, the way READ_MEDIA_VISUAL_USER_SELECTED does
+     * for the media permissions. Partially granted permissions don't block the flow.
+     */
+    public static void registerPartialAccessRule(@NonNull String permission, int minSdkVersion, @NonNull String... companions)
+    {
+        PermissionClassification.registerPartialAccessRule(permission, minSdkVersion, companions);
     }
 
     public void showPermissionManager(List<PermissionInfo> permissionsList,@NonNull PermissionResultCallBack resultCallBack) throws RuntimeException
     {
-        if (context instanceof AppCompatActivity)
+        AppCompatActivity activity = getActivity();
+        if (activity != null)
         {
-            boolean isAllPermissionsGranted = false;
-            for(PermissionInfo permissionInfo : permissionsList)
-            {
-                if (ContextCompat.checkSelfPermission(context, permissionInfo.getPermission()) != PackageManager.PERMISSION_GRANTED)
-                {
+            //// The plan is only compiled once something is missing ////
+            showPermissionManager(activity, permissionsList, null, resultCallBack);
+        }else {
+            throw new RuntimeException("Context is Not A Valid Activity");
+        }
+    }
 
-                    if (checkVisualUserSelectedPermission(permissionInfo))
-                    {
-                        isAllPermissionsGranted = true;
-                    }else {
-                        isAllPermissionsGranted = false;
-                        break;
-                    }
+    /**
+     * Shows a plan compiled ahead of time with {@link PermissionFlowPlan#compile}, plans are
+     * immutable and can be kept and reused for every activity that asks the same permissions.
+     */
+    public void showPermissionManager(@NonNull PermissionFlowPlan flowPlan,@NonNull PermissionResultCallBack resultCallBack) throws RuntimeException
+    {
+        AppCompatActivity activity = getActivity();
+        if (activity != null)
+        {
+            showPermissionManager(activity, flowPlan.getSteps(), flowPlan, resultCallBack);
+        }else {
+            throw new RuntimeException("Context is Not A Valid Activity");
+        }
+    }
 
-                }else {
-                    isAllPermissionsGranted = true;
-                }
+    private void showPermissionManager(AppCompatActivity activity, List<PermissionInfo> permissionsList,
+                                       @Nullable PermissionFlowPlan flowPlan, @NonNull PermissionResultCallBack resultCallBack)
+    {
+        flowMetrics.onFlowStarted();
+        if (flowPlan != null)
+        {
+            flowState = PermissionFlowState.of(activity);
+            PermissionStateSnapshot inFlightSnapshot = takeInFlightSnapshot(permissionsList);
+            if (inFlightSnapshot != null)
+            {
+                //// Recreated mid-flow and nothing invalidated the cache since, the grants resolved before are still valid ////
+                attachPermissionManager(activity, flowPlan, inFlightSnapshot, resultCallBack);
+                return;
             }
+        }
 
-            if (isAllPermissionsGranted)
+        PermissionChecker permissionChecker = getPermissionChecker();
+        int ipcCheckCount = PermissionFlowMetrics.getIpcCheckCount(permissionChecker);
+        long preCheckStart = flowMetrics.beginPreCheck();
+        PermissionStateSnapshot snapshot = null;
+        PermissionPrefetcher.PrefetchedState prefetchedState = PermissionPrefetcher.take(permissionChecker, permissionsList);
+        if (prefetchedState != null)
+        {
+            snapshot = prefetchedState.getSnapshot();
+            if (flowPlan == null)
+            {
+                flowPlan = compileFlowPlan(prefetchedState, permissionsList);
+                flowState = PermissionFlowState.of(activity);
+            }
+        }
+        if (snapshot == null)
+        {
+            if (PermissionStateSnapshot.isAllSatisfied(permissionChecker, permissionsList))
             {
+                endPreCheck(permissionChecker, preCheckStart, ipcCheckCount);
+                if (flowPlan != null && flowState.isInFlight(permissionsList))
+                {
+                    flowState.finish();
+                }
+                flowMetrics.onFlowCompleted(true);
                 resultCallBack.onPermissionsGranted();
                 return;
             }
 
+            if (flowPlan == null)
+            {
+                flowPlan = PermissionFlowPlan.compile(permissionsList);
+                flowState = PermissionFlowState.of(activity);
+                snapshot = takeInFlightSnapshot(flowPlan.getSteps());
+            }
+            if (snapshot == null)
+            {
+                //// Resolve every permission once, slides read from this snapshot ////
+                snapshot = PermissionStateSnapshot.resolve(permissionChecker, flowPlan.getSteps());
+            }
+        }
+        endPreCheck(permissionChecker, preCheckStart, ipcCheckCount);
+        attachPermissionManager(activity, flowPlan, snapshot, resultCallBack);
+    }
+
+    /**
+     * Same as {@link #showPermissionManager(List, PermissionResultCallBack)} but grant state is
+     * evaluated on a background thread. The main thread is only used to attach the permission
+     * manager when something is actually missing. Callbacks are delivered on the main thread.
+     */
+    public void showPermissionManagerAsync(List<PermissionInfo> permissionsList,@NonNull PermissionResultCallBack resultCallBack) throws RuntimeException
+    {
+        AppCompatActivity activity = getActivity();
+        if (activity != null)
+        {
+            showPermissionManagerAsync(activity, permissionsList, null, resultCallBack);
+        }else {
+            throw new RuntimeException("Context is Not A Valid Activity");
+        }
+    }
 
-            AppCompatActivity activity = (AppCompatActivity) context;
-            Window window = activity.getWindow();
-            preStatusBarColor = window.getStatusBarColor();
-            window.setStatusBarColor(pManagerView.darkBlue);
-
-            ViewGroup contentView = activity.findViewById(android.R.id.content);
-            ViewGroup rootView = (ViewGroup) contentView.getParent();
-            rootView.removeView(contentView);
-
-            ViewGroup.LayoutParams params = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
-            rootView.addView(pManagerView,params);
-
-
-            // Register permission request launcher
-            requestPermissionLauncher = activity.registerForActivityResult(
-                    new ActivityResultContracts.RequestPermission(),
-                    isGranted -> {
-                        if (isGranted)
-                        {
-                            index++;
-                            isNextAction = true;
-                            String nextFabButtonText = "Next";
-                            if (index >= permissionsList.size())
-                            {
-                                nextFabButtonText = "Finish";
-                            }
-                            pManagerView.nextFabButton.setText(nextFabButtonText);
-                        }
-                        else if (!ActivityCompat.shouldShowRequestPermissionRationale(activity, selectedPermissionInfo.getPermission()))
-                        {
-                            // Permission is permanently denied
-                            openAppSettings(activity);
-                        }
-                        else {
-                            if (checkVisualUserSelectedPermission(selectedPermissionInfo))
-                            {
-                                index++;
-                                isNextAction = true;
-                                String nextFabButtonText = "Next";
-                                if (index >= permissionsList.size())
-                                {
-                                    nextFabButtonText = "Finish";
-                                }
-                                pManagerView.nextFabButton.setText(nextFabButtonText);
-                            }else {
-                                // Permission is denied but not permanently
-                            }
-
-                        }
-                    });
-
-            if (slideChangeListener == null)
-            {
-                slideChangeListener = new PermissionManagerView.OnSlideChangeListener() {
-                    @Override
-                    public boolean onSlideChanged(TextView headerTextView, TextView permissionInfoTextView)
-                    {
-                        if (index < permissionsList.size() && index >= 0)
-                        {
-                            selectedPermissionInfo = permissionsList.get(index);
-                            headerTextView.setText(selectedPermissionInfo.getPermissionTag());
-                            permissionInfoTextView.setText(selectedPermissionInfo.getPermissionInfo());
-
-                            if (ContextCompat.checkSelfPermission(context, selectedPermissionInfo.getPermission()) != PackageManager.PERMISSION_GRANTED)
-                            {
-                                if (checkVisualUserSelectedPermission(selectedPermissionInfo))
-                                {
-                                    index++;
-                                    isNextAction = true;
-                                    String nextFabButtonText = "Next";
-                                    if (index >= permissionsList.size())
-                                    {
-                                        nextFabButtonText = "Finish";
-                                    }
-                                    pManagerView.nextFabButton.setText(nextFabButtonText);
-                                }else {
-                                    isNextAction = false;
-                                    String nextFabButtonText = "Allow";
-                                    pManagerView.nextFabButton.setText(nextFabButtonText);
-                                }
-                            }
-                            else {
-                                index++;
-                                isNextAction = true;
-                                String nextFabButtonText = "Next";
-                                if (index >= permissionsList.size())
-                                {
-                                    nextFabButtonText = "Finish";
-                                }
-                                pManagerView.nextFabButton.setText(nextFabButtonText);
-                            }
-                        }else {
-                            //// Hide Permission Manager ////
-                            rootView.removeView(pManagerView);
-                            rootView.addView(contentView);
-                            requestPermissionLauncher.unregister();
-                            window.setStatusBarColor(preStatusBarColor);
-                            resultCallBack.onPermissionsGranted();
-                            return false;
-                        }
-
-                        return true;
-                    }
-                };
+    public void showPermissionManagerAsync(@NonNull PermissionFlowPlan flowPlan,@NonNull PermissionResultCallBack resultCallBack) throws RuntimeException
+    {
+        AppCompatActivity activity = getActivity();
+        if (activity != null)
+        {
+            showPermissionManagerAsync(activity, flowPlan.getSteps(), flowPlan, resultCallBack);
+        }else {
+            throw new RuntimeException("Context is Not A Valid Activity");
+        }
+    }
+
+    private void showPermissionManagerAsync(AppCompatActivity activity, List<PermissionInfo> permissionsList,
+                                            @Nullable PermissionFlowPlan flowPlan, @NonNull PermissionResultCallBack resultCallBack)
+    {
+        flowMetrics.onFlowStarted();
+        if (flowPlan != null)
+        {
+            flowState = PermissionFlowState.of(activity);
+            PermissionStateSnapshot inFlightSnapshot = takeInFlightSnapshot(permissionsList);
+            if (inFlightSnapshot != null)
+            {
+                attachPermissionManager(activity, flowPlan, inFlightSnapshot, resultCallBack);
+                return;
+            }
+        }
+
+        PermissionChecker permissionChecker = getPermissionChecker();
+        PermissionDecisionStore decisionStore = getDecisionStore();
+        EVALUATION_EXECUTOR.execute(() -> {
+            int ipcCheckCount = PermissionFlowMetrics.getIpcCheckCount(permissionChecker);
+            long preCheckStart = flowMetrics.beginPreCheck();
+            PermissionFlowPlan missingFlowPlan = flowPlan;
+            PermissionStateSnapshot snapshot = null;
+            PermissionPrefetcher.PrefetchedState prefetchedState = PermissionPrefetcher.take(permissionChecker, permissionsList);
+            if (prefetchedState != null)
+            {
+                snapshot = prefetchedState.getSnapshot();
+                if (missingFlowPlan == null)
+                {
+                    missingFlowPlan = compileFlowPlan(prefetchedState, permissionsList);
+                }
+            }
+            else if (!PermissionStateSnapshot.isAllSatisfied(permissionChecker, permissionsList))
+            {
+                if (missingFlowPlan == null)
+                {
+                    missingFlowPlan = PermissionFlowPlan.compile(permissionsList);
+                }
+                snapshot = PermissionStateSnapshot.resolve(permissionChecker, missingFlowPlan.getSteps());
+            }
+            endPreCheck(permissionChecker, preCheckStart, ipcCheckCount);
+            if (snapshot != null)
+            {
+                //// Read the stored decisions here, not on the first slide ////
+                decisionStore.ensureLoaded();
             }
 
-            pManagerView.nextFabButton.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    if (isNextAction)
+            final PermissionFlowPlan evaluatedFlowPlan = missingFlowPlan;
+            final PermissionStateSnapshot missingSnapshot = snapshot;
+            MAIN_HANDLER.post(() -> {
+                if (missingSnapshot == null)
+                {
+                    if (flowPlan != null && flowState.isInFlight(permissionsList))
+                    {
+                        flowState.finish();
+                    }
+                    flowMetrics.onFlowCompleted(true);
+                    resultCallBack.onPermissionsGranted();
+                }
+                else if (activity.isFinishing() || activity.isDestroyed())
+                {
+                    flowMetrics.onFlowCompleted(false);
+                    resultCallBack.onCancel();
+                }
+                else {
+                    if (flowPlan == null)
                     {
-                        pManagerView.slideNext(slideChangeListener);
-                    }else {
-                        /// Ask Selected Permission ///
-                        askPermission(selectedPermissionInfo);
+                        flowState = PermissionFlowState.of(activity);
                     }
+                    attachPermissionManager(activity, evaluatedFlowPlan, missingSnapshot, resultCallBack);
                 }
             });
+        });
+    }
+
+    /**
+     * @return the plan prefetch compiled from this very list, or a fresh one.
+     */
+    private static PermissionFlowPlan compileFlowPlan(PermissionPrefetcher.PrefetchedState prefetchedState,
+                                                      List<PermissionInfo> permissionsList)
+    {
+        PermissionFlowPlan flowPlan = prefetchedState.getFlowPlan(permissionsList);
+        return flowPlan != null ? flowPlan : PermissionFlowPlan.compile(permissionsList);
+    }
+
+    /**
+     * @return the snapshot of a flow for these permissions interrupted by recreation, null when
+     * there is none or the cache was invalidated since.
+     */
+    @Nullable
+    private PermissionStateSnapshot takeInFlightSnapshot(List<PermissionInfo> permissionsList)
+    {
+        PermissionStateSnapshot inFlightSnapshot = flowState.isInFlight(permissionsList) ? flowState.getSnapshot() : null;
+        return inFlightSnapshot != null && !inFlightSnapshot.isStale() ? inFlightSnapshot : null;
+    }
+
+    private void endPreCheck(PermissionChecker permissionChecker, long preCheckStart, int ipcCheckCountBefore)
+    {
+        int ipcCheckCount = ipcCheckCountBefore < 0 ? -1
+                : PermissionFlowMetrics.getIpcCheckCount(permissionChecker) - ipcCheckCountBefore;
+        flowMetrics.endPreCheck(preCheckStart, ipcCheckCount);
+    }
+
+    private void attachPermissionManager(AppCompatActivity activity, PermissionFlowPlan flowPlan,
+                                         PermissionStateSnapshot snapshot, @NonNull PermissionResultCallBack resultCallBack)
+    {
+        List<PermissionInfo> permissionsList = flowPlan.getSteps();
+        PermissionRequestCoordinator coordinator = PermissionRequestCoordinator.of(activity);
+        if (coordinator.join(permissionsList, completeFlowMetrics(resultCallBack)))
+        {
+            //// A flow is already shown in this activity, it takes these permissions over ////
+            return;
+        }
+
+        this.coordinator = coordinator;
+        this.flowPlan = flowPlan;
+        permissionStateSnapshot = snapshot;
+        List<PermissionInfo> restoredMissingPermissions = flowState.isInFlight(permissionsList)
+                ? flowState.restoreMissingPermissions(permissionsList) : null;
+        if (restoredMissingPermissions != null && snapshot != flowState.getSnapshot()
+                && !restoredMissingPermissions.containsAll(flowPlan.collectMissing(snapshot)))
+        {
+            //// Left behind by a flow that ended all granted, or revoked since, it starts over ////
+            restoredMissingPermissions = null;
+        }
+        boolean isResumed = restoredMissingPermissions != null;
+        Long flowStartNanos = flowState.takeFlowStartNanos();
+        if (isResumed)
+        {
+            if (flowStartNanos != null)
+            {
+                flowMetrics.onFlowResumed(flowStartNanos);
+            }
+            missingPermissions = restoredMissingPermissions;
+            index = flowState.getIndex();
+            phase = flowState.isNextAction() ? PermissionFlowPlan.Phase.NEXT : PermissionFlowPlan.Phase.ALLOW;
+            flowState.resume(snapshot);
         }else {
-            throw new RuntimeException("Context is Not A Valid Activity");
+            //// One scan decides which slides exist, granted entries never get one ////
+            missingPermissions = flowPlan.collectMissing(snapshot);
+            index = 0;
+            phase = PermissionFlowPlan.Phase.NEXT;
+            flowState.start(permissionsList, missingPermissions, snapshot);
+        }
+        if (missingPermissions.isEmpty())
+        {
+            flowState.finish();
+            flowMetrics.onFlowCompleted(true);
+            resultCallBack.onPermissionsGranted();
+            return;
+        }
+        this.resultCallBack = coordinator.start(this, resultCallBack);
+        //// Stored decisions are first needed by the first permission slide, read them meanwhile ////
+        getDecisionStore().loadAsync();
+
+        //// View is only built once something is actually missing ////
+        if (screen == null)
+        {
+            long viewConstructionStart = flowMetrics.beginViewConstruction();
+            screen = new PermissionFlowScreen(activity, style != null ? style : PermissionManagerStyle.getDefault(activity),
+                    flowMetrics, new ScreenListener());
+            flowMetrics.endViewConstruction(viewConstructionStart);
+        }else if (!isResumed)
+        {
+            //// Reused from an earlier flow of this manager, which left its last slide behind ////
+            screen.reset();
+            setPhase(PermissionFlowPlan.Phase.NEXT);
+        }
+        screen.setAnimationProfile(animationProfile);
+        screen.attach(activity, displayMode);
+
+        if (isResumed && !restoreSlide())
+        {
+            return;
+        }
+
+        registerLaunchers(activity);
+    }
+
+    boolean isFlowRunning()
+    {
+        return resultCallBack != null;
+    }
+
+    /**
+     * Appends the still missing entries of another caller's request to the running flow,
+     * permissions already in the flow are not asked twice.
+     */
+    void mergePermissions(List<PermissionInfo> permissionsList)
+    {
+        permissionStateSnapshot.include(permissionsList);
+        boolean isAppended = false;
+        for (int i = 0; i < permissionsList.size(); i++)
+        {
+            PermissionInfo permissionInfo = permissionsList.get(i);
+            if (!permissionStateSnapshot.isSatisfied(permissionInfo) && !isInFlow(permissionInfo.getPermission()))
+            {
+                missingPermissions.add(permissionInfo);
+                isAppended = true;
+            }
         }
+        if (isAppended)
+        {
+            flowState.setMissingPermissions(missingPermissions);
+        }
+    }
+
+    private boolean isInFlow(String permission)
+    {
+        for (int i = 0; i < missingPermissions.size(); i++)
+        {
+            if (missingPermissions.get(i).getPermission().equals(permission))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A joined request is timed until the flow that took it over reports.
+     */
+    private PermissionResultCallBack completeFlowMetrics(@NonNull PermissionResultCallBack resultCallBack)
+    {
+        return new PermissionResultCallBack() {
+            @Override
+            public void onPermissionsGranted() {
+                flowMetrics.onFlowCompleted(true);
+                resultCallBack.onPermissionsGranted();
+            }
+
+            @Override
+            public void onCancel() {
+                flowMetrics.onFlowCompleted(false);
+                resultCallBack.onCancel();
+            }
+        };
+    }
+
+    /**
+     * Puts the slide that was visible before recreation back without animating to it.
+     *
+     * @return false if nothing is missing anymore and the permission manager finished.
+     */
+    private boolean restoreSlide()
+    {
+        if (phase != PermissionFlowPlan.Phase.NEXT)
+        {
+            return showNextMissingPermission();
+        }
+        if (index > 0)
+        {
+            index = flowPlan.nextPendingIndex(missingPermissions, index, permissionStateSnapshot);
+            if (index >= missingPermissions.size())
+            {
+                finishPermissionManager();
+                return false;
+            }
+            screen.showPermission(missingPermissions.get(index - 1));
+            setPhase(PermissionFlowPlan.Phase.NEXT);
+        }
+        return true;
+    }
+
+    private boolean showNextMissingPermission()
+    {
+        index = flowPlan.nextPendingIndex(missingPermissions, index, permissionStateSnapshot);
+        while (index < missingPermissions.size() && missingPermissions.get(index).isOptional()
+                && isPermanentlyDenied(missingPermissions.get(index).getPermission()))
+        {
+            //// Optional and refused for good before, not worth a settings detour ////
+            index = flowPlan.nextPendingIndex(missingPermissions, index + 1, permissionStateSnapshot);
+        }
+        if (index < missingPermissions.size())
+        {
+            selectedPermissionInfo = missingPermissions.get(index);
+            screen.showPermission(selectedPermissionInfo);
+
+            //// Denied for good last time, a dialog would be dismissed by the system at once ////
+            setPhase(PermissionFlowPlan.phaseFor(isPermanentlyDenied(selectedPermissionInfo.getPermission())));
+            return true;
+        }
+
+        //// Hide Permission Manager ////
+        finishPermissionManager();
+        return false;
+    }
+
+    /**
+     * The only place the button changes, the position is saved along with it.
+     */
+    private void setPhase(PermissionFlowPlan.Phase phase)
+    {
+        this.phase = phase;
+        flowState.setPosition(index, phase == PermissionFlowPlan.Phase.NEXT);
+        screen.setPhase(phase);
+    }
+
+    private void finishPermissionManager()
+    {
+        screen.detach();
+        removeSettingsReturnObserver();
+        flowState.finish();
+
+        PermissionResultCallBack callBack = resultCallBack;
+        resultCallBack = null;
+        flowMetrics.onFlowCompleted(true);
+        callBack.onPermissionsGranted();
+    }
+
+    /**
+     * The launchers belong to the activity's coordinator, shared with every other manager, this
+     * only makes sure they exist and that the view is released with the activity.
+     */
+    private void registerLaunchers(AppCompatActivity activity)
+    {
+        if (lifecycleObserver == null)
+        {
+            lifecycleObserver = new ActivityLifecycleObserver();
+            activity.getLifecycle().addObserver(lifecycleObserver);
+        }
+        coordinator.registerLaunchers(activity, flowState.getLauncherKey());
+    }
+
+    /**
+     * Single permission dialog result, routed here by the coordinator while this manager runs
+     * the flow.
+     */
+    void onPermissionResult(boolean isGranted)
+    {
+        AppCompatActivity resultActivity = getActivity();
+        if (resultCallBack == null || resultActivity == null)
+        {
+            return;
+        }
+        flowMetrics.onSystemDialogResult(isGranted);
+        permissionStateSnapshot.refresh(selectedPermissionInfo.getPermission());
+        onPermissionResult(resultActivity, recordDecision(resultActivity, selectedPermissionInfo.getPermission(), isGranted));
+    }
+
+    void onMultiplePermissionsResult(Map<String, Boolean> results)
+    {
+        AppCompatActivity resultActivity = getActivity();
+        if (resultCallBack == null || resultActivity == null)
+        {
+            return;
+        }
+        PermissionDecisionStore.Outcome selectedOutcome = PermissionDecisionStore.Outcome.DENIED;
+        for (Map.Entry<String, Boolean> result : results.entrySet())
+        {
+            permissionStateSnapshot.refresh(result.getKey());
+            PermissionDecisionStore.Outcome outcome = recordDecision(resultActivity, result.getKey(), result.getValue());
+            if (result.getKey().equals(selectedPermissionInfo.getPermission()))
+            {
+                selectedOutcome = outcome;
+            }
+        }
+        flowMetrics.onSystemDialogResult(selectedOutcome == PermissionDecisionStore.Outcome.GRANTED);
+        onPermissionResult(resultActivity, selectedOutcome);
+    }
+
+    private void onPermissionResult(AppCompatActivity activity, PermissionDecisionStore.Outcome outcome)
+    {
+        switch (PermissionFlowPlan.onResult(outcome, selectedPermissionInfo.isOptional()))
+        {
+            case ADVANCE:
+                advanceAfterGrant();
+                break;
+            case OPEN_SETTINGS:
+                openAppSettings(activity);
+                break;
+            default:
+                // Permission is denied but not permanently
+                break;
+        }
+    }
+
+    /**
+     * Classifies a system dialog result and remembers it across process restarts.
+     */
+    private PermissionDecisionStore.Outcome recordDecision(AppCompatActivity activity, String permission, boolean isGranted)
+    {
+        PermissionDecisionStore.Outcome outcome;
+        if (isGranted)
+        {
+            outcome = PermissionDecisionStore.Outcome.GRANTED;
+        }
+        else if (permissionStateSnapshot.isPartiallyGranted(permission) || isDowngraded(permission))
+        {
+            //// The user picked the lesser option, that is an answer and not a refusal ////
+            outcome = PermissionDecisionStore.Outcome.PARTIALLY_GRANTED;
+        }
+        else if (!getPermissionChecker().shouldShowRequestPermissionRationale(activity, permission))
+        {
+            outcome = PermissionDecisionStore.Outcome.PERMANENTLY_DENIED;
+        }
+        else {
+            outcome = PermissionDecisionStore.Outcome.DENIED;
+        }
+        getDecisionStore().record(permission, outcome);
+        return outcome;
+    }
+
+    private boolean isDowngraded(String permission)
+    {
+        String[] companions = PermissionClassification.getDowngradeCompanions(permission);
+        if (companions != null)
+        {
+            for (String companion : companions)
+            {
+                if (getPermissionChecker().checkPermission(companion) == PackageManager.PERMISSION_GRANTED)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * No rationale alone also means "never asked", the stored decision tells the two apart.
+     */
+    private boolean isPermanentlyDenied(String permission)
+    {
+        return getDecisionStore().isPermanentlyDenied(permission)
+                && !getPermissionChecker().shouldShowRequestPermissionRationale(getActivity(), permission);
+    }
+
+    private void advanceAfterGrant()
+    {
+        index = flowPlan.nextPendingIndex(missingPermissions, index + 1, permissionStateSnapshot);
+        if (index >= missingPermissions.size())
+        {
+            //// Nothing remains, finish now instead of after a Finish tap and one more slide ////
+            finishPermissionManager();
+            return;
+        }
+        setPhase(PermissionFlowPlan.Phase.NEXT);
     }
 
     private void askPermission(PermissionInfo permissionInfo)
     {
-        if (selectedPermissionInfo != null && requestPermissionLauncher != null)
+        if (selectedPermissionInfo == null)
+        {
+            return;
+        }
+        if (phase == PermissionFlowPlan.Phase.SETTINGS)
+        {
+            openAppSettings(getActivity());
+        }
+        else {
+            //// The slide's permission and what the system asks with it, a whole request group only in batch mode ////
+            String[] permissions = collectRequest(permissionInfo);
+            if (permissions.length > 1 || isBatchRequestEnabled)
+            {
+                if (coordinator.requestPermissions(permissions))
+                {
+                    flowMetrics.onSystemDialogLaunched(permissions);
+                }
+            }
+            else if (coordinator.requestPermission(permissionInfo.permission))
+            {
+                flowMetrics.onSystemDialogLaunched(permissions);
+            }
+        }
+    }
+
+    /**
+     * Everything one system dialog asks for: the selected permission and the permissions the
+     * system only accepts together with it, plus in batch mode every still missing permission
+     * of the same request group further down the list.
+     */
+    private String[] collectRequest(PermissionInfo permissionInfo)
+    {
+        ArrayList<String> permissions = new ArrayList<>();
+        addWithCoRequests(permissions, permissionInfo.getPermission());
+        for (int i = index + 1; i < missingPermissions.size(); i++)
+        {
+            PermissionInfo nextPermissionInfo = missingPermissions.get(i);
+            if ((isCoRequestOf(nextPermissionInfo, permissionInfo)
+                    || (isBatchRequestEnabled && permissionInfo.isSameRequestGroup(nextPermissionInfo)))
+                    && !permissionStateSnapshot.isSatisfied(nextPermissionInfo)
+                    && flowPlan.isReachable(nextPermissionInfo, permissionStateSnapshot))
+            {
+                addWithCoRequests(permissions, nextPermissionInfo.getPermission());
+            }
+        }
+        return permissions.toArray(new String[0]);
+    }
+
+    private static void addWithCoRequests(ArrayList<String> permissions, String permission)
+    {
+        if (!permissions.contains(permission))
         {
-            requestPermissionLauncher.launch(permissionInfo.permission);
+            permissions.add(permission);
+        }
+        String[] coRequests = PermissionClassification.getCoRequests(permission);
+        if (coRequests != null)
+        {
+            for (String coRequest : coRequests)
+            {
+                if (!permissions.contains(coRequest))
+                {
+                    permissions.add(coRequest);
+                }
+            }
         }
     }
 
-    private boolean checkVisualUserSelectedPermission(PermissionInfo permissionInfo)
+    /**
+     * Asking approximate location with precise further down the list would grant approximate
+     * and never offer precise, so they share the dialog.
+     */
+    private static boolean isCoRequestOf(PermissionInfo permissionInfo, PermissionInfo selectedPermissionInfo)
     {
-        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.TIRAMISU)
+        String[] coRequests = PermissionClassification.getCoRequests(permissionInfo.getPermission());
+        if (coRequests != null)
         {
-            if (permissionInfo.getPermission().equals(Manifest.permission.READ_MEDIA_VIDEO)
-                    || permissionInfo.getPermission().equals(Manifest.permission.READ_MEDIA_AUDIO)
-                    || permissionInfo.getPermission().equals(Manifest.permission.READ_MEDIA_IMAGES))
+            for (String coRequest : coRequests)
             {
-                return ContextCompat.checkSelfPermission(context, Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED) == PackageManager.PERMISSION_GRANTED;
+                if (coRequest.equals(selectedPermissionInfo.getPermission()))
+                {
+                    return true;
+                }
             }
         }
         return false;
     }
 
-    private void openAppSettings(Activity activity)
+    /**
+     * Drops everything that references the activity: launchers, observers and the view.
+     */
+    private void releaseActivity()
+    {
+        removeSettingsReturnObserver();
+        if (screen != null)
+        {
+            screen.release();
+            screen = null;
+        }
+        selectedPermissionInfo = null;
+        missingPermissions = null;
+        flowPlan = null;
+        permissionStateSnapshot = null;
+        coordinator = null;
+    }
+
+    private void openAppSettings(AppCompatActivity activity)
     {
         Intent intent = new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
         Uri uri = Uri.fromParts("package", activity.getPackageName(), null);
         intent.setData(uri);
+        flowMetrics.onSettingsOpened(selectedPermissionInfo.getPermission());
         activity.startActivity(intent);
+        observeSettingsReturn(activity);
+    }
+
+    /**
+     * The settings detour ends with the next ON_RESUME of the activity that opened it, only the
+     * permission it was opened for is checked again.
+     */
+    private void observeSettingsReturn(AppCompatActivity activity)
+    {
+        removeSettingsReturnObserver();
+        settingsReturnObserver = new SettingsReturnObserver(activity, selectedPermissionInfo);
+        activity.getLifecycle().addObserver(settingsReturnObserver);
+    }
+
+    private void onSettingsReturned(AppCompatActivity activity, PermissionInfo permissionInfo)
+    {
+        flowMetrics.onSettingsReturned();
+        if (resultCallBack == null || permissionInfo != selectedPermissionInfo)
+        {
+            return;
+        }
+        permissionStateSnapshot.refresh(permissionInfo.getPermission());
+        if (permissionStateSnapshot.isSatisfied(permissionInfo))
+        {
+            recordDecision(activity, permissionInfo.getPermission(), permissionStateSnapshot.isGranted(permissionInfo.getPermission()));
+            //// Granted in settings, no second tap and dialog round trip for it ////
+            advanceAfterGrant();
+        }
+    }
+
+    private void removeSettingsReturnObserver()
+    {
+        if (settingsReturnObserver != null)
+        {
+            settingsReturnObserver.activity.getLifecycle().removeObserver(settingsReturnObserver);
+            settingsReturnObserver = null;
+        }
     }
 
 
@@ -251,6 +944,12 @@ public class PermissionManager {
         private final String permission;
         private String permissionTag;
         private String permissionInfo;
+        @StringRes
+        private int permissionTagRes;
+        @StringRes
+        private int permissionInfoRes;
+        private String requestGroup;
+        private boolean isOptional = false;
 
         public PermissionInfo(String permission) {
             this.permission = permission;
@@ -266,6 +965,15 @@ public class PermissionManager {
 
         public void setPermissionTag(String permissionTag) {
             this.permissionTag = permissionTag;
+            this.permissionTagRes = 0;
+        }
+
+        /**
+         * Resolved against the activity when shown, so it follows its locale.
+         */
+        public void setPermissionTag(@StringRes int permissionTagRes) {
+            this.permissionTagRes = permissionTagRes;
+            this.permissionTag = null;
         }
 
         public String getPermissionInfo() {
@@ -274,6 +982,82 @@ public class PermissionManager {
 
         public void setPermissionInfo(String permissionInfo) {
             this.permissionInfo = permissionInfo;
+            this.permissionInfoRes = 0;
+        }
+
+        /**
+         * Resolved against the activity when shown, so it follows its locale.
+         */
+        public void setPermissionInfo(@StringRes int permissionInfoRes) {
+            this.permissionInfoRes = permissionInfoRes;
+            this.permissionInfo = null;
+        }
+
+        CharSequence resolvePermissionTag(Context context) {
+            return permissionTagRes != 0 ? context.getText(permissionTagRes) : permissionTag;
+        }
+
+        CharSequence resolvePermissionInfo(Context context) {
+            return permissionInfoRes != 0 ? context.getText(permissionInfoRes) : permissionInfo;
+        }
+
+        /**
+         * @return the group this permission is asked with in batch mode, a built-in group for
+         * well known related permissions when none was set.
+         */
+        @Nullable
+        public String getRequestGroup() {
+            if (requestGroup != null)
+            {
+                return requestGroup;
+            }
+            return PermissionClassification.getRequestGroup(permission);
+        }
+
+        public void setRequestGroup(@Nullable String requestGroup) {
+            this.requestGroup = requestGroup;
+        }
+
+        public boolean isOptional() {
+            return isOptional;
+        }
+
+        /**
+         * A denied optional entry doesn't hold the flow back, it moves on to the next one
+         * instead of asking again or opening the app settings.
+         */
+        public void setOptional(boolean optional) {
+            isOptional = optional;
+        }
+
+        boolean isSameRequestGroup(PermissionInfo other) {
+            String group = getRequestGroup();
+            return group != null && group.equals(other.getRequestGroup());
+        }
+    }
+
+
+    public enum DisplayMode
+    {
+        /** Removes android.R.id.content while the permission manager is shown */
+        REPLACE_CONTENT,
+        /** Adds the permission manager on top of android.R.id.content, hidden from accessibility */
+        OVERLAY
+    }
+
+
+    public enum AnimationProfile
+    {
+        NORMAL(800, 1000),
+        FAST(250, 320),
+        NONE(0, 0);
+
+        private final long headerDuration;
+        private final long infoDuration;
+
+        AnimationProfile(long headerDuration, long infoDuration) {
+            this.headerDuration = headerDuration;
+            this.infoDuration = infoDuration;
         }
     }
 
@@ -288,12 +1072,92 @@ public class PermissionManager {
 
     /////// Inner Classes //////////
 
-    private static class PermissionManagerView extends ConstraintLayout implements Animator.AnimatorListener
+    private class ActivityLifecycleObserver implements DefaultLifecycleObserver
+    {
+        @Override
+        public void onDestroy(@NonNull LifecycleOwner owner) {
+            owner.getLifecycle().removeObserver(this);
+            AppCompatActivity activity = getActivity();
+            boolean isChangingConfigurations = activity != null && activity.isChangingConfigurations();
+            releaseActivity();
+            lifecycleObserver = null;
+
+            PermissionResultCallBack callBack = resultCallBack;
+            resultCallBack = null;
+            if (callBack == null)
+            {
+                return;
+            }
+            if (isChangingConfigurations)
+            {
+                //// The recreated activity's manager reports the flow, its trace sections end here ////
+                flowState.suspend(flowMetrics.onFlowSuspended());
+            }else {
+                //// Torn down for good, a recreated activity won't pick this flow up ////
+                flowState.finish();
+                flowMetrics.onFlowCompleted(false);
+                callBack.onCancel();
+            }
+        }
+    }
+
+    private class ScreenListener implements PermissionFlowScreen.Listener
+    {
+        @Override
+        public void onButtonClicked() {
+            if (phase == PermissionFlowPlan.Phase.NEXT)
+            {
+                screen.slideNext();
+            }else {
+                /// Ask Selected Permission ///
+                askPermission(selectedPermissionInfo);
+            }
+        }
+
+        @Override
+        public boolean onSlideChanged() {
+            return showNextMissingPermission();
+        }
+    }
+
+    private class SettingsReturnObserver implements DefaultLifecycleObserver
+    {
+        private final AppCompatActivity activity;
+        private final PermissionInfo permissionInfo;
+        private boolean isPaused = false;
+
+        SettingsReturnObserver(AppCompatActivity activity, PermissionInfo permissionInfo) {
+            this.activity = activity;
+            this.permissionInfo = permissionInfo;
+        }
+
+        @Override
+        public void onPause(@NonNull LifecycleOwner owner) {
+            isPaused = true;
+        }
+
+        @Override
+        public void onResume(@NonNull LifecycleOwner owner) {
+            //// The observer is added while resumed, that first replayed ON_RESUME is skipped ////
+            if (!isPaused)
+            {
+                return;
+            }
+            owner.getLifecycle().removeObserver(this);
+            settingsReturnObserver = null;
+            onSettingsReturned(activity, permissionInfo);
+        }
+    }
+
+    @VisibleForTesting
+    static class PermissionManagerView extends ConstraintLayout implements Animator.AnimatorListener
     {
         private Paint paint;
         private LinearGradient linearGradient;
-        private int darkBlue,brightBlue,whiteTransparent;
-        private String headerText,permissionInfoText,fabButtonText;
+        private BackgroundRenderNode backgroundRenderNode;
+        private final FrameTimeTracker slideFrameTracker = new FrameTimeTracker("Slide transition");
+        private PermissionFlowMetrics flowMetrics;
+        private PermissionManagerStyle style;
 
         ///// Child Views ////
         private TextView headerTextView, permissionInfoTextView;
@@ -301,37 +1165,39 @@ public class PermissionManager {
 
         public PermissionManagerView(Context context) {
             super(context);
-            init(context);
+            init(context, PermissionManagerStyle.getDefault(context));
+        }
+
+        public PermissionManagerView(Context context, @NonNull PermissionManagerStyle style) {
+            super(context);
+            init(context, style);
         }
 
         public PermissionManagerView(Context context, @Nullable AttributeSet attrs) {
             super(context, attrs);
-            init(context);
+            init(context, PermissionManagerStyle.getDefault(context));
         }
 
         public PermissionManagerView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
             super(context, attrs, defStyleAttr);
-            init(context);
+            init(context, PermissionManagerStyle.getDefault(context));
         }
 
         public PermissionManagerView(Context context, @Nullable AttributeSet attrs, int defStyleAttr, int defStyleRes) {
             super(context, attrs, defStyleAttr, defStyleRes);
-            init(context);
+            init(context, PermissionManagerStyle.getDefault(context));
         }
 
-        private void init(Context context)
+        private void init(Context context, PermissionManagerStyle style)
         {
+            this.style = style;
             setFitsSystemWindows(true);
+            //// Swallow touches, in overlay mode the content below must not receive them ////
+            setClickable(true);
 
             paint = new Paint(Paint.ANTI_ALIAS_FLAG);
             paint.setStyle(Paint.Style.FILL);
 
-            /// Color Parse ////
-            darkBlue = Color.parseColor("#0033FF");
-            brightBlue = Color.parseColor("#3F51B5");
-            whiteTransparent = Color.parseColor("#20FFFFFF");
-
-
             headerTextView = genrateHeaderTextView(context);
             addView(headerTextView);
             addNextFabButton(context);
@@ -339,15 +1205,29 @@ public class PermissionManager {
             permissionInfoTextView = genratePermissionInfoTextView(context);
 
             addView(permissionInfoTextView);
+        }
 
-            invalidate();
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    linearGradient = createLinearGradient(darkBlue,Color.WHITE,Color.WHITE,new float[]{0f, 0.9f, 1f});
-                    invalidate();
+        @Override
+        protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+            super.onSizeChanged(w, h, oldw, oldh);
+            if (w > 0 && w != oldw)
+            {
+                slideDistance = w;
+                updateSlideSets();
+            }
+
+            //// Background only depends on size, build the shader here and never per frame ////
+            linearGradient = createLinearGradient(style.getPrimaryColor(),Color.WHITE,Color.WHITE,new float[]{0f, 0.9f, 1f});
+            paint.setShader(linearGradient);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            {
+                if (backgroundRenderNode == null)
+                {
+                    backgroundRenderNode = new BackgroundRenderNode();
                 }
-            });
+                backgroundRenderNode.record(w, h, paint);
+            }
         }
 
 
@@ -360,9 +1240,13 @@ public class PermissionManager {
 
         @Override
         protected void dispatchDraw(Canvas canvas) {
-            if (linearGradient != null)
+            if (backgroundRenderNode != null && canvas.isHardwareAccelerated())
+            {
+                //// Recorded once per size, animation frames only composite it ////
+                backgroundRenderNode.draw(canvas);
+            }
+            else if (linearGradient != null)
             {
-                paint.setShader(linearGradient);
                 // Draw the gradient rectangle
                 canvas.drawRect(0, 0, getWidth(), getHeight(), paint);
             }
@@ -374,20 +1258,16 @@ public class PermissionManager {
 
         private TextView genrateHeaderTextView(Context context)
         {
-            //// Header Text Size ////
-            int headerTextSizePx = dpToPx(context,10);
-            headerText = "Welcome";
-
             TextView headerTextView = new TextView(context);
             int id = View.generateViewId();
             headerTextView.setId(id);
-            headerTextView.setText(headerText);
-            headerTextView.setTextColor(Color.WHITE);
-            headerTextView.setTextSize(headerTextSizePx);
-            headerTextView.setTypeface(null, Typeface.BOLD);
+            headerTextView.setText(style.getWelcomeText());
+            headerTextView.setTextColor(style.getTextColor());
+            headerTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, style.getHeaderTextSize());
+            headerTextView.setTypeface(style.getTypeface());
 
             LayoutParams params = new Constraints.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-            params.topMargin = dpToPx(context,24);
+            params.topMargin = style.getHeaderTopMargin();
 
             params.startToStart = LayoutParams.PARENT_ID;
             params.endToEnd = LayoutParams.PARENT_ID;
@@ -400,23 +1280,20 @@ public class PermissionManager {
 
         private void addNextFabButton(Context context)
         {
-            //// Header Text Size ////
-            fabButtonText = "NEXT";
-
             nextFabButton = new ExtendedFloatingActionButton(context);
             int id = View.generateViewId();
             nextFabButton.setId(id);
-            nextFabButton.setText(fabButtonText);
-            nextFabButton.setTextColor(Color.WHITE);
-            nextFabButton.setTypeface(null, Typeface.BOLD);
+            nextFabButton.setText(style.getNextText());
+            nextFabButton.setTextColor(style.getTextColor());
+            nextFabButton.setTypeface(style.getTypeface());
             nextFabButton.setTextAlignment(TEXT_ALIGNMENT_CENTER);
 
-            ColorStateList fabTint = ColorStateList.valueOf(brightBlue);
+            ColorStateList fabTint = ColorStateList.valueOf(style.getAccentColor());
             nextFabButton.setBackgroundTintList(fabTint);
 
             LayoutParams params = new Constraints.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-            params.bottomMargin = dpToPx(context,30);
-            params.rightMargin = dpToPx(context,30);
+            params.bottomMargin = style.getButtonMargin();
+            params.rightMargin = style.getButtonMargin();
 
             params.endToEnd = LayoutParams.PARENT_ID;
             params.bottomToBottom = LayoutParams.PARENT_ID;
@@ -425,28 +1302,25 @@ public class PermissionManager {
 
         private TextView genratePermissionInfoTextView(Context context)
         {
-            //// Header Text Size ////
-            int textSizePx = dpToPx(context,7);
-            permissionInfoText = "You need to Grant Some Required Permissions to this App";
-
             TextView permissionInfoTextView = new TextView(context);
             int id = View.generateViewId();
             permissionInfoTextView.setId(id);
 
-            permissionInfoTextView.setText(permissionInfoText);
+            permissionInfoTextView.setText(style.getIntroText());
 
-            permissionInfoTextView.setTextColor(Color.WHITE);
-            permissionInfoTextView.setTextSize(textSizePx);
-            permissionInfoTextView.setTypeface(null, Typeface.BOLD);
+            permissionInfoTextView.setTextColor(style.getTextColor());
+            permissionInfoTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, style.getInfoTextSize());
+            permissionInfoTextView.setTypeface(style.getTypeface());
             permissionInfoTextView.setTextAlignment(TEXT_ALIGNMENT_CENTER);
-            int padding = dpToPx(context, 20);
+            int padding = style.getCardPadding();
             permissionInfoTextView.setPadding(padding,padding,padding,padding);
-            setRoundedCornerBackground(permissionInfoTextView,whiteTransparent,dpToPx(context,30));
+            //// Shares the drawable state of every other card, nothing is built per view ////
+            permissionInfoTextView.setBackground(style.newCardBackground(context.getResources()));
 
             LayoutParams params = new Constraints.LayoutParams(LayoutParams.MATCH_CONSTRAINT, LayoutParams.MATCH_CONSTRAINT);
-            params.topMargin = dpToPx(context,8);
-            params.rightMargin = dpToPx(context,20);
-            params.leftMargin = dpToPx(context,20);
+            params.topMargin = style.getCardTopMargin();
+            params.rightMargin = style.getCardSideMargin();
+            params.leftMargin = style.getCardSideMargin();
 
             params.startToStart = LayoutParams.PARENT_ID;
             params.endToEnd = LayoutParams.PARENT_ID;
@@ -458,76 +1332,229 @@ public class PermissionManager {
             return permissionInfoTextView;
         }
 
+        //// Slide distance follows the view width so every screen size fully clears ////
+        private float slideDistance = 1100;
+        private AnimationProfile animationProfile = AnimationProfile.NORMAL;
+
+        //// Built on first transition and reused, a transition allocates nothing afterwards ////
+        private AnimatorSet slideOutNextSet, slideInNextSet, slideOutPreSet, slideInPreSet;
+        private AnimatorSet runningOutSet, runningInSet;
+        private boolean isOutCanceled = false;
+
         private boolean isSlideNext = true;
         private OnSlideChangeListener slideChangeListener;
-        private void slideNext(@Nullable OnSlideChangeListener slideChangeListener)
+        void slideNext(@Nullable OnSlideChangeListener slideChangeListener)
         {
-            this.slideChangeListener = slideChangeListener;
-            isSlideNext = true;
-            animateViewTranslationXY(headerTextView,1100,0,800,new AnticipateInterpolator(),null);
-            animateViewTranslationXY(permissionInfoTextView,1100,0,1000,new AnticipateInterpolator(),this);
+            if (slideOutNextSet == null)
+            {
+                slideOutNextSet = createSlideSet(0, slideDistance, new AnticipateInterpolator(), this);
+                slideInNextSet = createSlideSet(-slideDistance, 0, new OvershootInterpolator(), inAnimationListener);
+            }
+            startSlide(true, slideChangeListener, slideOutNextSet, slideInNextSet);
+        }
+
+        void slidePre(@Nullable OnSlideChangeListener slideChangeListener)
+        {
+            if (slideOutPreSet == null)
+            {
+                slideOutPreSet = createSlideSet(0, -slideDistance, new AnticipateInterpolator(), this);
+                slideInPreSet = createSlideSet(slideDistance, 0, new OvershootInterpolator(), inAnimationListener);
+            }
+            startSlide(false, slideChangeListener, slideOutPreSet, slideInPreSet);
         }
 
-        private void slidePre(@Nullable OnSlideChangeListener slideChangeListener)
+        private void startSlide(boolean isSlideNext, @Nullable OnSlideChangeListener slideChangeListener,
+                                AnimatorSet outSet, AnimatorSet inSet)
         {
+            if (isAnimationSkipped())
+            {
+                if (slideChangeListener != null)
+                {
+                    slideChangeListener.onSlideChanged(headerTextView, permissionInfoTextView);
+                }
+                return;
+            }
+            if (runningOutSet != null && runningOutSet.isStarted())
+            {
+                //// Already leaving, a quick second tap must not skip a slide ////
+                return;
+            }
+            if (runningInSet != null && runningInSet.isStarted())
+            {
+                runningInSet.end();
+            }
+
             this.slideChangeListener = slideChangeListener;
-            isSlideNext = false;
-            animateViewTranslationXY(headerTextView,-1100,0,800,new AnticipateInterpolator(),null);
-            animateViewTranslationXY(permissionInfoTextView,-1100,0,1000,new AnticipateInterpolator(),this);
+            this.isSlideNext = isSlideNext;
+            runningOutSet = outSet;
+            runningInSet = inSet;
+            isOutCanceled = false;
+
+            startFrameTracking();
+            headerTextView.setLayerType(LAYER_TYPE_HARDWARE, null);
+            permissionInfoTextView.setLayerType(LAYER_TYPE_HARDWARE, null);
+            outSet.start();
         }
 
-        private LinearGradient createLinearGradient(int startColor, int middleColor, int endColor, float[] positions) {
-            // Define gradient colors
-            int[] colors = {startColor, middleColor, endColor};
-            return new LinearGradient(
-                    0, 0, // Start point
-                    0, getHeight(),     // End point
-                    colors,         // Gradient colors
-                    positions,      // Gradient positions
-                    Shader.TileMode.CLAMP // Shader tiling mode
-            );
+        /**
+         * Runs the current transition to its end synchronously, slide change included.
+         */
+        @VisibleForTesting
+        void endSlide()
+        {
+            if (runningOutSet != null && runningOutSet.isStarted())
+            {
+                runningOutSet.end();
+            }
+            if (runningInSet != null && runningInSet.isStarted())
+            {
+                runningInSet.end();
+            }
         }
 
-        public void setRoundedCornerBackground(View view, int backgroundColor, float cornerRadius)
+        @Override
+        protected void onDetachedFromWindow() {
+            cancelSlide();
+            super.onDetachedFromWindow();
+        }
+
+        void cancelSlide()
         {
-            GradientDrawable shape = new GradientDrawable();
-            shape.setShape(GradientDrawable.RECTANGLE);
-            shape.setColor(backgroundColor);
-            shape.setCornerRadius(cornerRadius);
-            view.setBackground(shape);
+            if (runningOutSet != null && runningOutSet.isStarted())
+            {
+                runningOutSet.cancel();
+            }
+            if (runningInSet != null && runningInSet.isStarted())
+            {
+                runningInSet.cancel();
+            }
         }
-        private int dpToPx(Context context, float dp) {
-            return (int) TypedValue.applyDimension(
-                    TypedValue.COMPLEX_UNIT_DIP,
-                    dp,
-                    context.getResources().getDisplayMetrics()
-            );
+
+        void setAnimationProfile(AnimationProfile animationProfile)
+        {
+            if (this.animationProfile == animationProfile)
+            {
+                return;
+            }
+            this.animationProfile = animationProfile;
+            updateSlideSets();
         }
 
+        private boolean isAnimationSkipped()
+        {
+            if (animationProfile == AnimationProfile.NONE)
+            {
+                return true;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+            {
+                return !ValueAnimator.areAnimatorsEnabled();
+            }
+            return Settings.Global.getFloat(getContext().getContentResolver(), Settings.Global.ANIMATOR_DURATION_SCALE, 1f) == 0f;
+        }
 
-        private void animateViewTranslationXY(View view, float translationX, float translationY, long duration,
-                                              @Nullable Interpolator interpolator, @Nullable Animator.AnimatorListener animatorListener)
+        /**
+         * Only runs on size or profile changes, transitions themselves keep reusing the sets.
+         */
+        private void updateSlideSets()
         {
-            ObjectAnimator animator = ObjectAnimator.ofPropertyValuesHolder(
-                    view,
-                    PropertyValuesHolder.ofFloat(View.TRANSLATION_X, translationX),
-                    PropertyValuesHolder.ofFloat(View.TRANSLATION_Y, translationY)
-            );
+            updateSlideSet(slideOutNextSet, 0, slideDistance);
+            updateSlideSet(slideInNextSet, -slideDistance, 0);
+            updateSlideSet(slideOutPreSet, 0, -slideDistance);
+            updateSlideSet(slideInPreSet, slideDistance, 0);
+        }
 
-            if (animatorListener != null)
+        private void updateSlideSet(@Nullable AnimatorSet animatorSet, float fromTranslationX, float toTranslationX)
+        {
+            if (animatorSet == null)
+            {
+                return;
+            }
+            ArrayList<Animator> childAnimations = animatorSet.getChildAnimations();
+            for (int i = 0; i < childAnimations.size(); i++)
             {
-                animator.addListener(animatorListener);
+                ObjectAnimator animator = (ObjectAnimator) childAnimations.get(i);
+                animator.setFloatValues(fromTranslationX, toTranslationX);
+                animator.setDuration(animator.getTarget() == headerTextView
+                        ? animationProfile.headerDuration : animationProfile.infoDuration);
             }
+        }
 
+        private AnimatorSet createSlideSet(float fromTranslationX, float toTranslationX, Interpolator interpolator,
+                                           Animator.AnimatorListener animatorListener)
+        {
+            ObjectAnimator headerAnimator = ObjectAnimator.ofFloat(headerTextView, View.TRANSLATION_X, fromTranslationX, toTranslationX);
+            headerAnimator.setDuration(animationProfile.headerDuration);
+            ObjectAnimator infoAnimator = ObjectAnimator.ofFloat(permissionInfoTextView, View.TRANSLATION_X, fromTranslationX, toTranslationX);
+            infoAnimator.setDuration(animationProfile.infoDuration);
+
+            AnimatorSet animatorSet = new AnimatorSet();
+            animatorSet.playTogether(headerAnimator, infoAnimator);
+            animatorSet.setInterpolator(interpolator);
+            animatorSet.addListener(animatorListener);
+            return animatorSet;
+        }
 
-            if (interpolator != null)
+        private void onSlideFinished()
+        {
+            headerTextView.setLayerType(LAYER_TYPE_NONE, null);
+            permissionInfoTextView.setLayerType(LAYER_TYPE_NONE, null);
+            if (slideFrameTracker.stop() && flowMetrics != null)
             {
-                animator.setInterpolator(interpolator);
+                flowMetrics.onSlideFinished(slideFrameTracker);
             }
-            animator.setDuration(duration);
-            animator.start();
         }
 
+        void setFlowMetrics(@Nullable PermissionFlowMetrics flowMetrics)
+        {
+            this.flowMetrics = flowMetrics;
+        }
+
+        void setOnButtonClickListener(@Nullable OnClickListener onClickListener)
+        {
+            nextFabButton.setOnClickListener(onClickListener);
+        }
+
+        void setButtonText(CharSequence text)
+        {
+            nextFabButton.setText(text);
+        }
+
+        void setTexts(CharSequence headerText, CharSequence permissionInfoText)
+        {
+            headerTextView.setText(headerText);
+            permissionInfoTextView.setText(permissionInfoText);
+        }
+
+        /**
+         * Back to the welcome slide, in place even if the last flow ended with it slid out.
+         */
+        void resetToWelcome()
+        {
+            cancelSlide();
+            headerTextView.setTranslationX(0);
+            permissionInfoTextView.setTranslationX(0);
+            setTexts(style.getWelcomeText(), style.getIntroText());
+        }
+
+        private LinearGradient createLinearGradient(int startColor, int middleColor, int endColor, float[] positions) {
+            // Define gradient colors
+            int[] colors = {startColor, middleColor, endColor};
+            return new LinearGradient(
+                    0, 0, // Start point
+                    0, getHeight(),     // End point
+                    colors,         // Gradient colors
+                    positions,      // Gradient positions
+                    Shader.TileMode.CLAMP // Shader tiling mode
+            );
+        }
+
+        PermissionManagerStyle getStyle()
+        {
+            return style;
+        }
+
+
         @Override
         public void onAnimationStart(@NonNull Animator animation) {
 
@@ -535,6 +1562,12 @@ public class PermissionManager {
 
         @Override
         public void onAnimationEnd(@NonNull Animator animation) {
+            if (isOutCanceled)
+            {
+                isOutCanceled = false;
+                onSlideFinished();
+                return;
+            }
             boolean canShowInAnimation = true;
             if (slideChangeListener != null)
             {
@@ -542,24 +1575,33 @@ public class PermissionManager {
             }
             if (canShowInAnimation)
             {
-                if (isSlideNext)
-                {
-                    headerTextView.setTranslationX(-1100);
-                    permissionInfoTextView.setTranslationX(-1100);
+                runningInSet.start();
+            }else {
+                onSlideFinished();
+            }
+        }
 
-                }else {
-                    headerTextView.setTranslationX(1100);
-                    permissionInfoTextView.setTranslationX(1100);
+        private final Animator.AnimatorListener inAnimationListener = new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                onSlideFinished();
+            }
+        };
 
-                }
-                animateViewTranslationXY(headerTextView,0,0,800,new OvershootInterpolator(),null);
-                animateViewTranslationXY(permissionInfoTextView,0,0,1000,new OvershootInterpolator(),null);
+        private void startFrameTracking()
+        {
+            Display display = getDisplay();
+            slideFrameTracker.start(display != null ? display.getRefreshRate() : 0);
+            if (flowMetrics != null)
+            {
+                flowMetrics.onSlideStarted();
             }
         }
 
         @Override
         public void onAnimationCancel(@NonNull Animator animation) {
-
+            //// onAnimationEnd follows, it must not change the slide ////
+            isOutCanceled = true;
         }
 
         @Override
@@ -568,7 +1610,27 @@ public class PermissionManager {
         }
 
 
-        private interface OnSlideChangeListener
+        @RequiresApi(Build.VERSION_CODES.Q)
+        private static class BackgroundRenderNode
+        {
+            private final RenderNode renderNode = new RenderNode("PermissionManagerBackground");
+
+            void record(int width, int height, Paint paint)
+            {
+                renderNode.setPosition(0, 0, width, height);
+                RecordingCanvas recordingCanvas = renderNode.beginRecording(width, height);
+                recordingCanvas.drawRect(0, 0, width, height, paint);
+                renderNode.endRecording();
+            }
+
+            void draw(Canvas canvas)
+            {
+                canvas.drawRenderNode(renderNode);
+            }
+        }
+
+
+        interface OnSlideChangeListener
         {
             boolean onSlideChanged(TextView headerTextView,TextView permissionInfoTextView);
         }
@@ -0,0 +1,466 @@
+package com.umirtech.permissionmanager;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.FontRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Px;
+import androidx.core.content.res.ResourcesCompat;
+import androidx.core.os.ConfigurationCompat;
+import androidx.core.os.LocaleListCompat;
+
+import java.util.HashMap;
+
+/**
+ * Colors, sizes, typeface and texts of the permission manager screen, resolved once. Build one
+ * with {@link Builder} or from the {@code permissionManagerStyle} theme attribute, otherwise the
+ * default of the context's theme is used. Immutable, every view shares the same instance and
+ * the same card background state, so showing the screen parses and inflates nothing.
+ */
+public final class PermissionManagerStyle
+{
+    private static final HashMap<StyleKey, PermissionManagerStyle> DEFAULT_STYLES = new HashMap<>();
+
+    private final int primaryColor;
+    private final int accentColor;
+    private final int cardColor;
+    private final int textColor;
+    private final float headerTextSize;
+    private final float infoTextSize;
+    private final int headerTopMargin;
+    private final int cardPadding;
+    private final int cardTopMargin;
+    private final int cardSideMargin;
+    private final int buttonMargin;
+    private final Typeface typeface;
+    private final CharSequence welcomeText;
+    private final CharSequence introText;
+    private final CharSequence nextText;
+    private final CharSequence allowText;
+    private final CharSequence settingsText;
+    private final Drawable.ConstantState cardBackgroundState;
+
+    private PermissionManagerStyle(Builder builder)
+    {
+        primaryColor = builder.primaryColor;
+        accentColor = builder.accentColor;
+        cardColor = builder.cardColor;
+        textColor = builder.textColor;
+        headerTextSize = builder.headerTextSize;
+        infoTextSize = builder.infoTextSize;
+        headerTopMargin = builder.headerTopMargin;
+        cardPadding = builder.cardPadding;
+        cardTopMargin = builder.cardTopMargin;
+        cardSideMargin = builder.cardSideMargin;
+        buttonMargin = builder.buttonMargin;
+        typeface = builder.typeface;
+        welcomeText = builder.welcomeText;
+        introText = builder.introText;
+        nextText = builder.nextText;
+        allowText = builder.allowText;
+        settingsText = builder.settingsText;
+
+        GradientDrawable cardBackground = new GradientDrawable();
+        cardBackground.setShape(GradientDrawable.RECTANGLE);
+        cardBackground.setColor(cardColor);
+        cardBackground.setCornerRadius(builder.cardCornerRadius);
+        cardBackgroundState = cardBackground.getConstantState();
+    }
+
+    /**
+     * @return the style of the context's theme, built on first use and kept for the process.
+     * Styles are kept per {@code permissionManagerStyle} resource and per density, font scale,
+     * locales and night mode, so each theme and configuration is read once and never mixed up.
+     */
+    @NonNull
+    public static PermissionManagerStyle getDefault(@NonNull Context context)
+    {
+        StyleKey key = new StyleKey(context);
+        synchronized (DEFAULT_STYLES)
+        {
+            PermissionManagerStyle style = DEFAULT_STYLES.get(key);
+            if (style == null)
+            {
+                style = fromTheme(context);
+                DEFAULT_STYLES.put(key, style);
+            }
+            return style;
+        }
+    }
+
+    /**
+     * Reads the style the {@code permissionManagerStyle} theme attribute points to, attributes
+     * it doesn't set keep their defaults.
+     */
+    @NonNull
+    public static PermissionManagerStyle fromTheme(@NonNull Context context)
+    {
+        Builder builder = new Builder(context);
+        TypedArray attributes = context.obtainStyledAttributes(null, R.styleable.PermissionManagerStyle,
+                R.attr.permissionManagerStyle, 0);
+        try
+        {
+            builder.setPrimaryColor(attributes.getColor(R.styleable.PermissionManagerStyle_pmPrimaryColor, builder.primaryColor));
+            builder.setAccentColor(attributes.getColor(R.styleable.PermissionManagerStyle_pmAccentColor, builder.accentColor));
+            builder.setCardColor(attributes.getColor(R.styleable.PermissionManagerStyle_pmCardColor, builder.cardColor));
+            builder.setTextColor(attributes.getColor(R.styleable.PermissionManagerStyle_pmTextColor, builder.textColor));
+            builder.setHeaderTextSize(attributes.getDimension(R.styleable.PermissionManagerStyle_pmHeaderTextSize, builder.headerTextSize));
+            builder.setInfoTextSize(attributes.getDimension(R.styleable.PermissionManagerStyle_pmInfoTextSize, builder.infoTextSize));
+            builder.setCardPadding(attributes.getDimensionPixelSize(R.styleable.PermissionManagerStyle_pmCardPadding, builder.cardPadding));
+            builder.setCardCornerRadius(attributes.getDimension(R.styleable.PermissionManagerStyle_pmCardCornerRadius, builder.cardCornerRadius));
+
+            int fontFamily = attributes.getResourceId(R.styleable.PermissionManagerStyle_pmFontFamily, 0);
+            if (fontFamily != 0)
+            {
+                builder.setFontFamily(fontFamily);
+            }
+            CharSequence text = attributes.getText(R.styleable.PermissionManagerStyle_pmWelcomeText);
+            if (text != null)
+            {
+                builder.setWelcomeText(text);
+            }
+            text = attributes.getText(R.styleable.PermissionManagerStyle_pmIntroText);
+            if (text != null)
+            {
+                builder.setIntroText(text);
+            }
+            text = attributes.getText(R.styleable.PermissionManagerStyle_pmNextText);
+            if (text != null)
+            {
+                builder.setNextText(text);
+            }
+            text = attributes.getText(R.styleable.PermissionManagerStyle_pmAllowText);
+            if (text != null)
+            {
+                builder.setAllowText(text);
+            }
+            text = attributes.getText(R.styleable.PermissionManagerStyle_pmSettingsText);
+            if (text != null)
+            {
+                builder.setSettingsText(text);
+            }
+        }finally {
+            attributes.recycle();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Status bar and top of the background gradient.
+     */
+    @ColorInt
+    public int getPrimaryColor()
+    {
+        return primaryColor;
+    }
+
+    /**
+     * Button tint.
+     */
+    @ColorInt
+    public int getAccentColor()
+    {
+        return accentColor;
+    }
+
+    @ColorInt
+    public int getCardColor()
+    {
+        return cardColor;
+    }
+
+    @ColorInt
+    public int getTextColor()
+    {
+        return textColor;
+    }
+
+    @Px
+    public float getHeaderTextSize()
+    {
+        return headerTextSize;
+    }
+
+    @Px
+    public float getInfoTextSize()
+    {
+        return infoTextSize;
+    }
+
+    @NonNull
+    public Typeface getTypeface()
+    {
+        return typeface;
+    }
+
+    @NonNull
+    public CharSequence getWelcomeText()
+    {
+        return welcomeText;
+    }
+
+    @NonNull
+    public CharSequence getIntroText()
+    {
+        return introText;
+    }
+
+    @NonNull
+    public CharSequence getNextText()
+    {
+        return nextText;
+    }
+
+    @NonNull
+    public CharSequence getAllowText()
+    {
+        return allowText;
+    }
+
+    @NonNull
+    public CharSequence getSettingsText()
+    {
+        return settingsText;
+    }
+
+    int getHeaderTopMargin()
+    {
+        return headerTopMargin;
+    }
+
+    int getCardPadding()
+    {
+        return cardPadding;
+    }
+
+    int getCardTopMargin()
+    {
+        return cardTopMargin;
+    }
+
+    int getCardSideMargin()
+    {
+        return cardSideMargin;
+    }
+
+    int getButtonMargin()
+    {
+        return buttonMargin;
+    }
+
+    /**
+     * @return a card background sharing its state with every other card of this style.
+     */
+    Drawable newCardBackground(Resources resources)
+    {
+        return cardBackgroundState.newDrawable(resources);
+    }
+
+
+    public static final class Builder
+    {
+        private final Context context;
+        private int primaryColor = Color.rgb(0x00, 0x33, 0xFF);
+        private int accentColor = Color.rgb(0x3F, 0x51, 0xB5);
+        private int cardColor = Color.argb(0x20, 0xFF, 0xFF, 0xFF);
+        private int textColor = Color.WHITE;
+        private float headerTextSize;
+        private float infoTextSize;
+        private final int headerTopMargin;
+        private int cardPadding;
+        private float cardCornerRadius;
+        private final int cardTopMargin;
+        private final int cardSideMargin;
+        private final int buttonMargin;
+        private Typeface typeface;
+        private CharSequence welcomeText = "Welcome";
+        private CharSequence introText = "You need to Grant Some Required Permissions to this App";
+        private CharSequence nextText = "Next";
+        private CharSequence allowText = "Allow";
+        private CharSequence settingsText = "Open Settings";
+
+        public Builder(@NonNull Context context)
+        {
+            this.context = context;
+            Resources resources = context.getResources();
+            DisplayMetrics displayMetrics = resources.getDisplayMetrics();
+
+            //// Text sizes were always dp values set as sp, kept so the screen looks the same ////
+            headerTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, dpToPx(10, displayMetrics), displayMetrics);
+            infoTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, dpToPx(7, displayMetrics), displayMetrics);
+            headerTopMargin = dpToPx(24, displayMetrics);
+            cardPadding = dpToPx(20, displayMetrics);
+            cardCornerRadius = dpToPx(30, displayMetrics);
+            cardTopMargin = dpToPx(8, displayMetrics);
+            cardSideMargin = dpToPx(20, displayMetrics);
+            buttonMargin = dpToPx(30, displayMetrics);
+        }
+
+        public Builder setPrimaryColor(@ColorInt int primaryColor)
+        {
+            this.primaryColor = primaryColor;
+            return this;
+        }
+
+        public Builder setAccentColor(@ColorInt int accentColor)
+        {
+            this.accentColor = accentColor;
+            return this;
+        }
+
+        public Builder setCardColor(@ColorInt int cardColor)
+        {
+            this.cardColor = cardColor;
+            return this;
+        }
+
+        public Builder setTextColor(@ColorInt int textColor)
+        {
+            this.textColor = textColor;
+            return this;
+        }
+
+        public Builder setHeaderTextSize(@Px float headerTextSize)
+        {
+            this.headerTextSize = headerTextSize;
+            return this;
+        }
+
+        public Builder setInfoTextSize(@Px float infoTextSize)
+        {
+            this.infoTextSize = infoTextSize;
+            return this;
+        }
+
+        public Builder setCardPadding(@Px int cardPadding)
+        {
+            this.cardPadding = cardPadding;
+            return this;
+        }
+
+        public Builder setCardCornerRadius(@Px float cardCornerRadius)
+        {
+            this.cardCornerRadius = cardCornerRadius;
+            return this;
+        }
+
+        /**
+         * The bold variant of the typeface is used.
+         */
+        public Builder setTypeface(@NonNull Typeface typeface)
+        {
+            this.typeface = typeface;
+            return this;
+        }
+
+        public Builder setFontFamily(@FontRes int fontFamily)
+        {
+            Typeface font = ResourcesCompat.getFont(context, fontFamily);
+            if (font != null)
+            {
+                typeface = font;
+            }
+            return this;
+        }
+
+        public Builder setWelcomeText(@NonNull CharSequence welcomeText)
+        {
+            this.welcomeText = welcomeText;
+            return this;
+        }
+
+        public Builder setIntroText(@NonNull CharSequence introText)
+        {
+            this.introText = introText;
+            return this;
+        }
+
+        public Builder setNextText(@NonNull CharSequence nextText)
+        {
+            this.nextText = nextText;
+            return this;
+        }
+
+        public Builder setAllowText(@NonNull CharSequence allowText)
+        {
+            this.allowText = allowText;
+            return this;
+        }
+
+        public Builder setSettingsText(@NonNull CharSequence settingsText)
+        {
+            this.settingsText = settingsText;
+            return this;
+        }
+
+        @NonNull
+        public PermissionManagerStyle build()
+        {
+            //// Bold lookup happens once here instead of once per text view ////
+            typeface = Typeface.create(typeface != null ? typeface : Typeface.DEFAULT, Typeface.BOLD);
+            return new PermissionManagerStyle(this);
+        }
+
+        private static int dpToPx(float dp, DisplayMetrics displayMetrics)
+        {
+            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, displayMetrics);
+        }
+    }
+
+
+    /**
+     * What the resolved values of a default style depend on.
+     */
+    private static final class StyleKey
+    {
+        private final int styleResId;
+        private final int densityDpi;
+        private final float fontScale;
+        private final int uiMode;
+        private final LocaleListCompat locales;
+
+        StyleKey(Context context)
+        {
+            TypedValue typedValue = new TypedValue();
+            styleResId = context.getTheme().resolveAttribute(R.attr.permissionManagerStyle, typedValue, true)
+                    ? typedValue.resourceId : 0;
+            Configuration configuration = context.getResources().getConfiguration();
+            densityDpi = configuration.densityDpi;
+            fontScale = configuration.fontScale;
+            uiMode = configuration.uiMode;
+            locales = ConfigurationCompat.getLocales(configuration);
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof StyleKey))
+            {
+                return false;
+            }
+            StyleKey key = (StyleKey) other;
+            return styleResId == key.styleResId && densityDpi == key.densityDpi && fontScale == key.fontScale
+                    && uiMode == key.uiMode && locales.equals(key.locales);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = styleResId;
+            hash = 31 * hash + densityDpi;
+            hash = 31 * hash + Float.floatToIntBits(fontScale);
+            hash = 31 * hash + uiMode;
+            return 31 * hash + locales.hashCode();
+        }
+    }
+}
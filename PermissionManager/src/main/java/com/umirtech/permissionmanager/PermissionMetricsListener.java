@@ -0,0 +1,43 @@
+package com.umirtech.permissionmanager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Timings of the permission flow, from showPermissionManager until the result callback. Every
+ * timing is also emitted as an android.os.Trace section prefixed with "PermissionManager#".
+ * Events are delivered on the main thread, except onPreCheck of showPermissionManagerAsync
+ * which comes from the evaluation thread.
+ */
+public interface PermissionMetricsListener
+{
+    /**
+     * @param ipcCheckCount permissions that had to be asked from the package manager, -1 when
+     * a custom {@link PermissionChecker} is in use and the count is unknown.
+     */
+    default void onPreCheck(long durationNanos, int ipcCheckCount) {}
+
+    default void onViewConstructed(long durationNanos) {}
+
+    default void onSlideAnimated(long durationNanos, int frameCount, int jankyFrameCount) {}
+
+    /**
+     * Same as {@link #onSlideAnimated(long, int, int)} with the longest frame of the slide,
+     * forwards to it unless overridden.
+     */
+    default void onSlideAnimated(long durationNanos, int frameCount, int jankyFrameCount, long maxFrameTimeNanos)
+    {
+        onSlideAnimated(durationNanos, frameCount, jankyFrameCount);
+    }
+
+    /**
+     * Time from requestPermissionLauncher.launch until the result arrived.
+     */
+    default void onSystemDialog(@NonNull String[] permissions, long durationNanos, boolean granted) {}
+
+    /**
+     * Time spent in the app settings screen opened for a permanently denied permission.
+     */
+    default void onSettingsDetour(@NonNull String permission, long durationNanos) {}
+
+    default void onFlowCompleted(long durationNanos, boolean granted) {}
+}
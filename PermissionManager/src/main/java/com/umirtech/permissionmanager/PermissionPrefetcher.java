@@ -0,0 +1,141 @@
+package com.umirtech.permissionmanager;
+
+import androidx.annotation.Nullable;
+import androidx.constraintlayout.widget.ConstraintLayout;
+
+import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds permission state resolved ahead of time by {@link PermissionManager#prefetch}, keyed by
+ * the permission strings of the prefetched list and of its compiled plan. A prefetched state is
+ * handed out once, and only while the process cache it was resolved from hasn't been
+ * invalidated since.
+ */
+final class PermissionPrefetcher
+{
+    private static final ConcurrentHashMap<List<String>, PrefetchedState> PREFETCHED_STATES = new ConcurrentHashMap<>();
+
+    private PermissionPrefetcher()
+    {
+    }
+
+    static void prefetch(PermissionStatusCache cache, List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsList);
+        int generation = cache.getGeneration();
+        PermissionStateSnapshot snapshot = PermissionStateSnapshot.resolve(cache, flowPlan.getSteps());
+        PrefetchedState prefetchedState = new PrefetchedState(new ArrayList<>(permissionsList), flowPlan, snapshot, generation);
+        PREFETCHED_STATES.put(prefetchedState.listKey, prefetchedState);
+        //// A plan compiled from the same list asks for the state by its steps ////
+        PREFETCHED_STATES.put(prefetchedState.stepsKey, prefetchedState);
+
+        if (!flowPlan.collectMissing(snapshot).isEmpty())
+        {
+            warmUpViewClasses();
+        }
+    }
+
+    /**
+     * @return the prefetched state for this list or plan steps, null when there is none or it
+     * went stale.
+     */
+    static PrefetchedState take(PermissionChecker permissionChecker, List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        if (PREFETCHED_STATES.isEmpty() || !(permissionChecker instanceof PermissionStatusCache))
+        {
+            return null;
+        }
+        PrefetchedState prefetchedState = PREFETCHED_STATES.remove(toKey(permissionsList));
+        if (prefetchedState == null)
+        {
+            return null;
+        }
+        PREFETCHED_STATES.remove(prefetchedState.listKey, prefetchedState);
+        PREFETCHED_STATES.remove(prefetchedState.stepsKey, prefetchedState);
+        if (prefetchedState.generation != ((PermissionStatusCache) permissionChecker).getGeneration())
+        {
+            return null;
+        }
+        return prefetchedState;
+    }
+
+    private static List<String> toKey(List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        ArrayList<String> key = new ArrayList<>(permissionsList.size());
+        for (int i = 0; i < permissionsList.size(); i++)
+        {
+            key.add(permissionsList.get(i).getPermission());
+        }
+        return key;
+    }
+
+    //// Class loading and verification happen here instead of on the main thread ////
+    private static void warmUpViewClasses()
+    {
+        loadClass(ConstraintLayout.class);
+        loadClass(ExtendedFloatingActionButton.class);
+        loadClass(PermissionManager.PermissionManagerView.class);
+        loadClass(PermissionFlowScreen.class);
+    }
+
+    private static void loadClass(Class<?> viewClass)
+    {
+        try
+        {
+            Class.forName(viewClass.getName(), true, viewClass.getClassLoader());
+        }catch (ClassNotFoundException ignored) {
+            // Only a warm up, the class is loaded on first use anyway
+        }
+    }
+
+
+    static final class PrefetchedState
+    {
+        private final List<PermissionManager.PermissionInfo> permissionsList;
+        private final List<String> listKey, stepsKey;
+        private final PermissionFlowPlan flowPlan;
+        private final PermissionStateSnapshot snapshot;
+        private final int generation;
+
+        private PrefetchedState(List<PermissionManager.PermissionInfo> permissionsList, PermissionFlowPlan flowPlan,
+                                PermissionStateSnapshot snapshot, int generation)
+        {
+            this.permissionsList = permissionsList;
+            this.listKey = toKey(permissionsList);
+            this.stepsKey = toKey(flowPlan.getSteps());
+            this.flowPlan = flowPlan;
+            this.snapshot = snapshot;
+            this.generation = generation;
+        }
+
+        PermissionStateSnapshot getSnapshot()
+        {
+            return snapshot;
+        }
+
+        /**
+         * @return the plan compiled by prefetch, null unless the list holds the very
+         * PermissionInfo objects that were prefetched since their texts and flags are mutable.
+         */
+        @Nullable
+        PermissionFlowPlan getFlowPlan(List<PermissionManager.PermissionInfo> permissionsList)
+        {
+            if (permissionsList.size() != this.permissionsList.size())
+            {
+                return null;
+            }
+            for (int i = 0; i < permissionsList.size(); i++)
+            {
+                if (permissionsList.get(i) != this.permissionsList.get(i))
+                {
+                    return null;
+                }
+            }
+            return flowPlan;
+        }
+    }
+}
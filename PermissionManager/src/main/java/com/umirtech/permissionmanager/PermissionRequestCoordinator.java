@@ -0,0 +1,182 @@
+package com.umirtech.permissionmanager;
+
+import android.app.Activity;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * One permission flow per activity. Requests made while a flow is shown are merged into it
+ * instead of stacking another overlay and system dialog, and every caller gets the single
+ * result. The system dialog launchers belong to the activity too, however many managers it
+ * has, and deliver their results to the manager of the running flow. Main thread only.
+ */
+final class PermissionRequestCoordinator implements DefaultLifecycleObserver
+{
+    private static final String LAUNCHER_KEY_PREFIX = "com.umirtech.permissionmanager.launcher#";
+    private static final WeakHashMap<Activity, PermissionRequestCoordinator> COORDINATORS = new WeakHashMap<>();
+
+    private final ArrayList<PermissionManager.PermissionResultCallBack> resultCallBacks = new ArrayList<>();
+    private PermissionManager activeManager;
+    private ActivityResultLauncher<String> requestPermissionLauncher;
+    private ActivityResultLauncher<String[]> requestMultiplePermissionsLauncher;
+
+    private final PermissionManager.PermissionResultCallBack fanOutCallBack = new PermissionManager.PermissionResultCallBack() {
+        @Override
+        public void onPermissionsGranted() {
+            for (PermissionManager.PermissionResultCallBack resultCallBack : drainCallBacks())
+            {
+                resultCallBack.onPermissionsGranted();
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            for (PermissionManager.PermissionResultCallBack resultCallBack : drainCallBacks())
+            {
+                resultCallBack.onCancel();
+            }
+        }
+    };
+
+    private PermissionRequestCoordinator()
+    {
+    }
+
+    static PermissionRequestCoordinator of(AppCompatActivity activity)
+    {
+        PermissionRequestCoordinator coordinator = COORDINATORS.get(activity);
+        if (coordinator == null)
+        {
+            coordinator = new PermissionRequestCoordinator();
+            COORDINATORS.put(activity, coordinator);
+            activity.getLifecycle().addObserver(coordinator);
+        }
+        return coordinator;
+    }
+
+    /**
+     * @return true if a flow is already shown and the request was merged into it, the callback
+     * then fires when that flow ends.
+     */
+    boolean join(List<PermissionManager.PermissionInfo> permissionsList, PermissionManager.PermissionResultCallBack resultCallBack)
+    {
+        if (activeManager == null || !activeManager.isFlowRunning())
+        {
+            return false;
+        }
+        activeManager.mergePermissions(permissionsList);
+        resultCallBacks.add(resultCallBack);
+        return true;
+    }
+
+    /**
+     * @return the callback the flow of this manager must report to.
+     */
+    PermissionManager.PermissionResultCallBack start(PermissionManager manager, PermissionManager.PermissionResultCallBack resultCallBack)
+    {
+        activeManager = manager;
+        resultCallBacks.clear();
+        resultCallBacks.add(resultCallBack);
+        return fanOutCallBack;
+    }
+
+    /**
+     * Registered on the registry directly with a key kept in the flow state. That is legal at any
+     * lifecycle state, and a dialog result that arrives while the activity is recreated is handed
+     * to the launchers of the new instance, then to whichever manager runs the flow there.
+     */
+    void registerLaunchers(AppCompatActivity activity, String launcherKey)
+    {
+        if (requestMultiplePermissionsLauncher == null)
+        {
+            requestMultiplePermissionsLauncher = activity.getActivityResultRegistry().register(
+                    LAUNCHER_KEY_PREFIX + launcherKey + "#batch",
+                    new ActivityResultContracts.RequestMultiplePermissions(),
+                    this::onMultiplePermissionsResult);
+        }
+        if (requestPermissionLauncher == null)
+        {
+            requestPermissionLauncher = activity.getActivityResultRegistry().register(
+                    LAUNCHER_KEY_PREFIX + launcherKey + "#single",
+                    new ActivityResultContracts.RequestPermission(),
+                    this::onPermissionResult);
+        }
+    }
+
+    /**
+     * @return false if the launchers are not registered, or no longer.
+     */
+    boolean requestPermission(String permission)
+    {
+        if (requestPermissionLauncher == null)
+        {
+            return false;
+        }
+        requestPermissionLauncher.launch(permission);
+        return true;
+    }
+
+    boolean requestPermissions(String[] permissions)
+    {
+        if (requestMultiplePermissionsLauncher == null)
+        {
+            return false;
+        }
+        requestMultiplePermissionsLauncher.launch(permissions);
+        return true;
+    }
+
+    private void onPermissionResult(Boolean isGranted)
+    {
+        if (activeManager != null)
+        {
+            activeManager.onPermissionResult(isGranted);
+        }
+    }
+
+    private void onMultiplePermissionsResult(Map<String, Boolean> results)
+    {
+        if (activeManager != null)
+        {
+            activeManager.onMultiplePermissionsResult(results);
+        }
+    }
+
+    private List<PermissionManager.PermissionResultCallBack> drainCallBacks()
+    {
+        ArrayList<PermissionManager.PermissionResultCallBack> drained = new ArrayList<>(resultCallBacks);
+        resultCallBacks.clear();
+        activeManager = null;
+        return drained;
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner)
+    {
+        owner.getLifecycle().removeObserver(this);
+        //// Callbacks usually reference the activity, the weak key alone would never clear. A
+        //// running flow still reports onCancel through the fan-out callback it holds ////
+        COORDINATORS.values().remove(this);
+        //// Unregistered, a key still launched keeps its request code for the recreated activity ////
+        if (requestPermissionLauncher != null)
+        {
+            requestPermissionLauncher.unregister();
+            requestPermissionLauncher = null;
+        }
+        if (requestMultiplePermissionsLauncher != null)
+        {
+            requestMultiplePermissionsLauncher.unregister();
+            requestMultiplePermissionsLauncher = null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.umirtech.permissionmanager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives grant state changes of the permissions it was added for with
+ * {@link PermissionManager#addPermissionStateListener}, on the main thread. The current state
+ * is delivered once right after adding, later calls only happen when the state actually changed.
+ */
+public interface PermissionStateListener
+{
+    void onPermissionStateChanged(@NonNull String permission, boolean isGranted);
+}
@@ -0,0 +1,183 @@
+package com.umirtech.permissionmanager;
+
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes grant state changes seen by {@link PermissionStatusCache}: request results, settings
+ * returns and the re-check of observed permissions when the app comes back to foreground. Changes
+ * arriving before the main thread gets to them are conflated to the latest state per permission,
+ * and a state equal to the last published one is dropped.
+ */
+final class PermissionStatePublisher
+{
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static volatile PermissionStatePublisher instance;
+
+    private final PermissionStatusCache cache;
+    private final Executor checkExecutor;
+
+    //// Main thread only ////
+    private final HashMap<PermissionStateListener, String[]> listeners = new HashMap<>();
+    private final HashMap<String, Boolean> publishedStates = new HashMap<>();
+    //// Added but not called yet, their initial delivery carries whatever was published meanwhile ////
+    private final HashSet<PermissionStateListener> initialPending = new HashSet<>();
+
+    //// Listener counts, written on the main thread and read by onChecked from any thread ////
+    private final ConcurrentHashMap<String, Integer> observedPermissions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> pendingStates = new ConcurrentHashMap<>();
+    private final AtomicBoolean isDispatchPosted = new AtomicBoolean();
+    private final Runnable dispatchRunnable = this::dispatchPendingStates;
+
+    private PermissionStatePublisher(PermissionStatusCache cache, Executor checkExecutor)
+    {
+        this.cache = cache;
+        this.checkExecutor = checkExecutor;
+    }
+
+    static PermissionStatePublisher getInstance(PermissionStatusCache cache, Executor checkExecutor)
+    {
+        PermissionStatePublisher publisher = instance;
+        if (publisher == null)
+        {
+            synchronized (PermissionStatePublisher.class)
+            {
+                publisher = instance;
+                if (publisher == null)
+                {
+                    publisher = new PermissionStatePublisher(cache, checkExecutor);
+                    cache.setStatePublisher(publisher);
+                    instance = publisher;
+                }
+            }
+        }
+        return publisher;
+    }
+
+    void addListener(PermissionStateListener listener, String[] permissions)
+    {
+        removeListener(listener);
+        listeners.put(listener, permissions);
+        initialPending.add(listener);
+        for (String permission : permissions)
+        {
+            Integer count = observedPermissions.get(permission);
+            observedPermissions.put(permission, count == null ? 1 : count + 1);
+        }
+
+        //// Initial state off the main thread, usually a cache hit ////
+        checkExecutor.execute(() -> {
+            int[] results = cache.checkAll(permissions);
+            MAIN_HANDLER.post(() -> {
+                if (listeners.get(listener) != permissions)
+                {
+                    return;
+                }
+                initialPending.remove(listener);
+                for (int i = 0; i < permissions.length; i++)
+                {
+                    boolean isGranted = results[i] == PackageManager.PERMISSION_GRANTED;
+                    //// A newer published state wins over this possibly older check ////
+                    Boolean publishedState = publishedStates.get(permissions[i]);
+                    if (publishedState == null)
+                    {
+                        publishedStates.put(permissions[i], isGranted);
+                    }else {
+                        isGranted = publishedState;
+                    }
+                    listener.onPermissionStateChanged(permissions[i], isGranted);
+                }
+            });
+        });
+    }
+
+    void removeListener(PermissionStateListener listener)
+    {
+        String[] permissions = listeners.remove(listener);
+        initialPending.remove(listener);
+        if (permissions == null)
+        {
+            return;
+        }
+        for (String permission : permissions)
+        {
+            Integer count = observedPermissions.get(permission);
+            if (count != null && count > 1)
+            {
+                observedPermissions.put(permission, count - 1);
+            }else {
+                observedPermissions.remove(permission);
+                publishedStates.remove(permission);
+            }
+        }
+    }
+
+    /**
+     * Called by the cache for every result that came from the package manager, on any thread.
+     */
+    void onChecked(String permission, int result)
+    {
+        if (!observedPermissions.containsKey(permission))
+        {
+            return;
+        }
+        pendingStates.put(permission, result == PackageManager.PERMISSION_GRANTED);
+        if (isDispatchPosted.compareAndSet(false, true))
+        {
+            MAIN_HANDLER.post(dispatchRunnable);
+        }
+    }
+
+    /**
+     * Settings may have changed anything while the app was away, only the observed permissions
+     * are checked again.
+     */
+    void onInvalidatedAll()
+    {
+        if (observedPermissions.isEmpty())
+        {
+            return;
+        }
+        String[] permissions = observedPermissions.keySet().toArray(new String[0]);
+        checkExecutor.execute(() -> cache.checkAll(permissions));
+    }
+
+    private void dispatchPendingStates()
+    {
+        isDispatchPosted.set(false);
+        for (String permission : pendingStates.keySet())
+        {
+            Boolean isGranted = pendingStates.remove(permission);
+            if (isGranted == null || isGranted.equals(publishedStates.get(permission)))
+            {
+                continue;
+            }
+            publishedStates.put(permission, isGranted);
+            for (Map.Entry<PermissionStateListener, String[]> entry : new HashMap<>(listeners).entrySet())
+            {
+                if (initialPending.contains(entry.getKey()))
+                {
+                    //// Its own check may have published this very state, it would arrive twice ////
+                    continue;
+                }
+                for (String observedPermission : entry.getValue())
+                {
+                    if (observedPermission.equals(permission))
+                    {
+                        entry.getKey().onPermissionStateChanged(permission, isGranted);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
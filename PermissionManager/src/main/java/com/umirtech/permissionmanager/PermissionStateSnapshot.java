@@ -0,0 +1,212 @@
+package com.umirtech.permissionmanager;
+
+import android.content.pm.PackageManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Grant state of a permission list, resolved once through a {@link PermissionChecker} with
+ * one bulk check for the distinct permissions and one for the partial grant companions of the
+ * denied ones. Slide decisions read from here instead of going back to the package manager.
+ */
+final class PermissionStateSnapshot
+{
+    private final PermissionChecker permissionChecker;
+    private final HashMap<String, Boolean> grantStates = new HashMap<>();
+    //// Cache generation the states were read at, anything else invalidating it makes them stale ////
+    private int generation;
+
+    private PermissionStateSnapshot(PermissionChecker permissionChecker)
+    {
+        this.permissionChecker = permissionChecker;
+        if (permissionChecker instanceof PermissionStatusCache)
+        {
+            generation = ((PermissionStatusCache) permissionChecker).getGeneration();
+        }
+    }
+
+    /**
+     * The "are we done?" check, straight from the checker without building a snapshot or a
+     * plan. Permissions that can't be requested on this API level are skipped like the plan
+     * skips them. Once everything is cached in {@link PermissionStatusCache} this is a plain
+     * memory lookup.
+     */
+    static boolean isAllSatisfied(PermissionChecker permissionChecker, List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        for (int i = 0; i < permissionsList.size(); i++)
+        {
+            String permission = permissionsList.get(i).getPermission();
+            if (PermissionClassification.isRequestable(permission)
+                    && permissionChecker.checkPermission(permission) != PackageManager.PERMISSION_GRANTED
+                    && !isPartiallyGranted(permissionChecker, permission))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPartiallyGranted(PermissionChecker permissionChecker, String permission)
+    {
+        String[] companions = PermissionClassification.getPartialGrantCompanions(permission);
+        if (companions != null)
+        {
+            for (String companion : companions)
+            {
+                if (permissionChecker.checkPermission(companion) == PackageManager.PERMISSION_GRANTED)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static PermissionStateSnapshot resolve(PermissionChecker permissionChecker, List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        PermissionStateSnapshot snapshot = new PermissionStateSnapshot(permissionChecker);
+        snapshot.include(permissionsList);
+        return snapshot;
+    }
+
+    /**
+     * Resolves the permissions of the list this snapshot doesn't know yet, used when another
+     * request is merged into a running flow.
+     */
+    void include(List<PermissionManager.PermissionInfo> permissionsList)
+    {
+        LinkedHashSet<String> permissions = new LinkedHashSet<>();
+        for (int i = 0; i < permissionsList.size(); i++)
+        {
+            String permission = permissionsList.get(i).getPermission();
+            if (!grantStates.containsKey(permission))
+            {
+                permissions.add(permission);
+            }
+        }
+        if (permissions.isEmpty())
+        {
+            return;
+        }
+        checkAll(permissions);
+
+        //// Companions are often shared (selected photos for images and video), each is checked once ////
+        LinkedHashSet<String> companionsToCheck = new LinkedHashSet<>();
+        for (String permission : permissions)
+        {
+            String[] companions = PermissionClassification.getPartialGrantCompanions(permission);
+            if (companions != null && !isGranted(permission))
+            {
+                for (String companion : companions)
+                {
+                    if (!grantStates.containsKey(companion))
+                    {
+                        companionsToCheck.add(companion);
+                    }
+                }
+            }
+        }
+        if (!companionsToCheck.isEmpty())
+        {
+            checkAll(companionsToCheck);
+        }
+    }
+
+    /**
+     * @return true if the cache was invalidated since the states were read, by a settings
+     * return or another flow. Snapshots of a custom checker can't tell and are never stale.
+     */
+    boolean isStale()
+    {
+        return permissionChecker instanceof PermissionStatusCache
+                && ((PermissionStatusCache) permissionChecker).getGeneration() != generation;
+    }
+
+    boolean isGranted(String permission)
+    {
+        Boolean granted = grantStates.get(permission);
+        return granted != null && granted;
+    }
+
+    /**
+     * @return true if the permission is granted, or partially granted through one of its
+     * {@link PermissionClassification} companions.
+     */
+    boolean isSatisfied(PermissionManager.PermissionInfo permissionInfo)
+    {
+        return isSatisfied(permissionInfo.getPermission());
+    }
+
+    boolean isSatisfied(String permission)
+    {
+        return isGranted(permission) || isPartiallyGranted(permission);
+    }
+
+    boolean isPartiallyGranted(String permission)
+    {
+        String[] companions = PermissionClassification.getPartialGrantCompanions(permission);
+        if (companions != null)
+        {
+            for (String companion : companions)
+            {
+                if (isGranted(companion))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Re-checks a single permission after its request result arrived, the checker is told
+     * first so a caching one doesn't answer with the state from before the request. Partial
+     * grant companions are only re-checked when the permission itself was denied.
+     */
+    void refresh(String permission)
+    {
+        String[] companions = PermissionClassification.getPartialGrantCompanions(permission);
+        boolean isCurrent = !isStale();
+        permissionChecker.onPermissionChanged(permission);
+        if (companions != null)
+        {
+            for (String companion : companions)
+            {
+                permissionChecker.onPermissionChanged(companion);
+            }
+        }
+        if (isCurrent && permissionChecker instanceof PermissionStatusCache)
+        {
+            //// Its own invalidations don't make the rest of the snapshot stale ////
+            generation = ((PermissionStatusCache) permissionChecker).getGeneration();
+        }
+
+        if (!check(permission) && companions != null)
+        {
+            for (String companion : companions)
+            {
+                check(companion);
+            }
+        }
+    }
+
+    private boolean check(String permission)
+    {
+        boolean granted = permissionChecker.checkPermission(permission) == PackageManager.PERMISSION_GRANTED;
+        grantStates.put(permission, granted);
+        return granted;
+    }
+
+    private void checkAll(Collection<String> permissions)
+    {
+        String[] permissionArray = permissions.toArray(new String[0]);
+        int[] results = permissionChecker.checkAll(permissionArray);
+        for (int i = 0; i < permissionArray.length; i++)
+        {
+            grantStates.put(permissionArray[i], results[i] == PackageManager.PERMISSION_GRANTED);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.umirtech.permissionmanager;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide grant state keyed by permission string, shared by every PermissionManager and
+ * wrapping the package manager backed checker. Entries are dropped when a request result
+ * arrives for them, and the whole cache is dropped when the app comes back to foreground since
+ * the user may have changed something in settings.
+ */
+final class PermissionStatusCache implements PermissionChecker
+{
+    private static volatile PermissionStatusCache instance;
+
+    private final PermissionChecker delegate;
+    private final ConcurrentHashMap<String, Integer> grantStates = new ConcurrentHashMap<>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicInteger delegateCheckCount = new AtomicInteger();
+    private volatile PermissionStatePublisher statePublisher;
+
+    PermissionStatusCache(PermissionChecker delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    static PermissionStatusCache getInstance(Context context)
+    {
+        PermissionStatusCache cache = instance;
+        if (cache == null)
+        {
+            synchronized (PermissionStatusCache.class)
+            {
+                cache = instance;
+                if (cache == null)
+                {
+                    cache = new PermissionStatusCache(new AndroidPermissionChecker(context));
+                    Context appContext = context.getApplicationContext();
+                    if (appContext instanceof Application)
+                    {
+                        ((Application) appContext).registerActivityLifecycleCallbacks(cache.new ForegroundObserver());
+                    }
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public int checkPermission(@NonNull String permission)
+    {
+        Integer result = grantStates.get(permission);
+        if (result == null)
+        {
+            delegateCheckCount.incrementAndGet();
+            result = delegate.checkPermission(permission);
+            grantStates.put(permission, result);
+            publish(permission, result);
+        }
+        return result;
+    }
+
+    /**
+     * Only the permissions that aren't cached yet go to the delegate, in one bulk call.
+     */
+    @NonNull
+    @Override
+    public int[] checkAll(@NonNull String[] permissions)
+    {
+        int[] results = new int[permissions.length];
+        int[] missIndexes = new int[permissions.length];
+        int missCount = 0;
+        for (int i = 0; i < permissions.length; i++)
+        {
+            Integer result = grantStates.get(permissions[i]);
+            if (result == null)
+            {
+                missIndexes[missCount++] = i;
+            }else {
+                results[i] = result;
+            }
+        }
+        if (missCount == 0)
+        {
+            return results;
+        }
+
+        String[] misses = new String[missCount];
+        for (int j = 0; j < missCount; j++)
+        {
+            misses[j] = permissions[missIndexes[j]];
+        }
+        delegateCheckCount.addAndGet(missCount);
+        int[] missResults = delegate.checkAll(misses);
+        for (int j = 0; j < missCount; j++)
+        {
+            results[missIndexes[j]] = missResults[j];
+            grantStates.put(misses[j], missResults[j]);
+            publish(misses[j], missResults[j]);
+        }
+        return results;
+    }
+
+    @Override
+    public boolean shouldShowRequestPermissionRationale(@NonNull Activity activity, @NonNull String permission)
+    {
+        return delegate.shouldShowRequestPermissionRationale(activity, permission);
+    }
+
+    void setStatePublisher(PermissionStatePublisher statePublisher)
+    {
+        this.statePublisher = statePublisher;
+    }
+
+    private void publish(String permission, int result)
+    {
+        PermissionStatePublisher publisher = statePublisher;
+        if (publisher != null)
+        {
+            publisher.onChecked(permission, result);
+        }
+    }
+
+    @Override
+    public void onPermissionChanged(@NonNull String permission)
+    {
+        invalidate(permission);
+    }
+
+    void invalidate(String permission)
+    {
+        generation.incrementAndGet();
+        grantStates.remove(permission);
+    }
+
+    void invalidateAll()
+    {
+        generation.incrementAndGet();
+        grantStates.clear();
+    }
+
+    /**
+     * @return how many permissions went to the delegate so far, each one is an IPC with the
+     * package manager checker.
+     */
+    int getDelegateCheckCount()
+    {
+        return delegateCheckCount.get();
+    }
+
+    /**
+     * Bumped on every invalidation, state derived from the cache is stale once it changed.
+     */
+    int getGeneration()
+    {
+        return generation.get();
+    }
+
+
+    private class ForegroundObserver implements Application.ActivityLifecycleCallbacks
+    {
+        private int startedActivities = 0;
+        private boolean wentToBackground = false;
+
+        @Override
+        public void onActivityStarted(@NonNull Activity activity)
+        {
+            startedActivities++;
+            if (wentToBackground)
+            {
+                //// Back from background, settings may have changed anything ////
+                wentToBackground = false;
+                invalidateAll();
+                PermissionStatePublisher publisher = statePublisher;
+                if (publisher != null)
+                {
+                    publisher.onInvalidatedAll();
+                }
+            }
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity)
+        {
+            if (startedActivities > 0)
+            {
+                startedActivities--;
+            }
+            if (startedActivities == 0 && !activity.isChangingConfigurations())
+            {
+                wentToBackground = true;
+            }
+        }
+
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState)
+        {
+
+        }
+
+        @Override
+        public void onActivityResumed(@NonNull Activity activity)
+        {
+
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity)
+        {
+
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState)
+        {
+
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity)
+        {
+
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.umirtech.permissionmanager;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plan compilation and the flow's state machine, without an activity or a view. Runs on
+ * Robolectric only so Build.VERSION matches the configured API level, the classification
+ * tables are built for it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PermissionFlowPlanTest {
+
+    @Test
+    public void compileDropsDuplicates() {
+        List<PermissionManager.PermissionInfo> permissions = permissionsOf(Manifest.permission.CAMERA,
+                Manifest.permission.RECORD_AUDIO, Manifest.permission.CAMERA);
+
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissions);
+
+        assertEquals(Arrays.asList(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO), toPermissions(flowPlan.getSteps()));
+        //// The first entry wins, with its texts ////
+        assertSame(permissions.get(0), flowPlan.getSteps().get(0));
+    }
+
+    @Test
+    @Config(sdk = 32)
+    public void compileDropsPermissionsMissingOnThisApiLevel() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.POST_NOTIFICATIONS,
+                Manifest.permission.CAMERA, Manifest.permission.READ_MEDIA_IMAGES));
+
+        assertEquals(Arrays.asList(Manifest.permission.CAMERA), toPermissions(flowPlan.getSteps()));
+    }
+
+    @Test
+    public void compileKeepsPermissionsOfThisApiLevel() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.POST_NOTIFICATIONS,
+                Manifest.permission.CAMERA, Manifest.permission.READ_MEDIA_IMAGES));
+
+        assertEquals(Arrays.asList(Manifest.permission.POST_NOTIFICATIONS, Manifest.permission.CAMERA,
+                Manifest.permission.READ_MEDIA_IMAGES), toPermissions(flowPlan.getSteps()));
+    }
+
+    @Test
+    public void compileDropsStoragePermissionsRetiredOnThisApiLevel() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.READ_EXTERNAL_STORAGE,
+                Manifest.permission.WRITE_EXTERNAL_STORAGE, Manifest.permission.CAMERA));
+
+        assertEquals(Arrays.asList(Manifest.permission.CAMERA), toPermissions(flowPlan.getSteps()));
+    }
+
+    @Test
+    @Config(sdk = 32)
+    public void compileKeepsReadStorageUpToItsLastApiLevel() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.READ_EXTERNAL_STORAGE,
+                Manifest.permission.WRITE_EXTERNAL_STORAGE));
+
+        assertEquals(Arrays.asList(Manifest.permission.READ_EXTERNAL_STORAGE), toPermissions(flowPlan.getSteps()));
+    }
+
+    @Test
+    @Config(sdk = 29)
+    public void compileKeepsWriteStorageUpToItsLastApiLevel() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.READ_EXTERNAL_STORAGE,
+                Manifest.permission.WRITE_EXTERNAL_STORAGE));
+
+        assertEquals(Arrays.asList(Manifest.permission.READ_EXTERNAL_STORAGE, Manifest.permission.WRITE_EXTERNAL_STORAGE),
+                toPermissions(flowPlan.getSteps()));
+    }
+
+    @Test
+    @Config(sdk = 30)
+    public void compileDropsWriteStorageFromApi30() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.WRITE_EXTERNAL_STORAGE,
+                Manifest.permission.READ_EXTERNAL_STORAGE));
+
+        assertEquals(Arrays.asList(Manifest.permission.READ_EXTERNAL_STORAGE), toPermissions(flowPlan.getSteps()));
+    }
+
+    @Test
+    public void compileStagesBackgroundLocationAfterForeground() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.ACCESS_BACKGROUND_LOCATION,
+                Manifest.permission.CAMERA, Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION));
+
+        assertEquals(Arrays.asList(Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION,
+                Manifest.permission.CAMERA, Manifest.permission.ACCESS_BACKGROUND_LOCATION), toPermissions(flowPlan.getSteps()));
+    }
+
+    @Test
+    public void nextPendingIndexPassesOverDeniedPrerequisite() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.ACCESS_FINE_LOCATION,
+                Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_BACKGROUND_LOCATION));
+        PermissionStateSnapshot snapshot = PermissionStateSnapshot.resolve(new FakePermissionChecker(), flowPlan.getSteps());
+        List<PermissionManager.PermissionInfo> pending = flowPlan.collectMissing(snapshot);
+        assertEquals(3, pending.size());
+
+        assertEquals(0, flowPlan.nextPendingIndex(pending, 0, snapshot));
+        //// Both foreground permissions were denied, the background dialog would be rejected at once ////
+        assertFalse(flowPlan.isReachable(pending.get(2), snapshot));
+        assertEquals(pending.size(), flowPlan.nextPendingIndex(pending, 2, snapshot));
+    }
+
+    @Test
+    public void nextPendingIndexStopsOnceAPrerequisiteIsGranted() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.ACCESS_FINE_LOCATION,
+                Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_BACKGROUND_LOCATION));
+        PermissionStateSnapshot snapshot = PermissionStateSnapshot.resolve(
+                new FakePermissionChecker(Manifest.permission.ACCESS_COARSE_LOCATION), flowPlan.getSteps());
+        //// Approximate location partially grants precise location, only background is left ////
+        List<PermissionManager.PermissionInfo> pending = flowPlan.collectMissing(snapshot);
+
+        assertEquals(Arrays.asList(Manifest.permission.ACCESS_BACKGROUND_LOCATION), toPermissions(pending));
+        assertTrue(flowPlan.isReachable(pending.get(0), snapshot));
+        assertEquals(0, flowPlan.nextPendingIndex(pending, 0, snapshot));
+    }
+
+    @Test
+    public void prerequisiteOutsideThePlanIsLeftToTheSystem() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.ACCESS_BACKGROUND_LOCATION));
+        PermissionStateSnapshot snapshot = PermissionStateSnapshot.resolve(new FakePermissionChecker(), flowPlan.getSteps());
+
+        assertTrue(flowPlan.isReachable(flowPlan.getSteps().get(0), snapshot));
+        assertEquals(0, flowPlan.nextPendingIndex(flowPlan.collectMissing(snapshot), 0, snapshot));
+    }
+
+    @Test
+    public void onResultAdvancesOnGrants() {
+        assertEquals(PermissionFlowPlan.Transition.ADVANCE, PermissionFlowPlan.onResult(PermissionDecisionStore.Outcome.GRANTED, false));
+        assertEquals(PermissionFlowPlan.Transition.ADVANCE,
+                PermissionFlowPlan.onResult(PermissionDecisionStore.Outcome.PARTIALLY_GRANTED, false));
+    }
+
+    @Test
+    public void onResultRetriesOrOpensSettingsOnDenials() {
+        assertEquals(PermissionFlowPlan.Transition.RETRY, PermissionFlowPlan.onResult(PermissionDecisionStore.Outcome.DENIED, false));
+        assertEquals(PermissionFlowPlan.Transition.OPEN_SETTINGS,
+                PermissionFlowPlan.onResult(PermissionDecisionStore.Outcome.PERMANENTLY_DENIED, false));
+        assertEquals(PermissionFlowPlan.Phase.SETTINGS, PermissionFlowPlan.phaseFor(true));
+        assertEquals(PermissionFlowPlan.Phase.ALLOW, PermissionFlowPlan.phaseFor(false));
+    }
+
+    @Test
+    public void onResultMovesPastOptionalDenials() {
+        assertEquals(PermissionFlowPlan.Transition.ADVANCE, PermissionFlowPlan.onResult(PermissionDecisionStore.Outcome.DENIED, true));
+        assertEquals(PermissionFlowPlan.Transition.ADVANCE,
+                PermissionFlowPlan.onResult(PermissionDecisionStore.Outcome.PERMANENTLY_DENIED, true));
+    }
+
+
+    private static List<PermissionManager.PermissionInfo> permissionsOf(String... permissions) {
+        List<PermissionManager.PermissionInfo> permissionsList = new ArrayList<>();
+        for (String permission : permissions) {
+            permissionsList.add(new PermissionManager.PermissionInfo(permission));
+        }
+        return permissionsList;
+    }
+
+    private static List<String> toPermissions(List<PermissionManager.PermissionInfo> permissionsList) {
+        List<String> permissions = new ArrayList<>();
+        for (PermissionManager.PermissionInfo permissionInfo : permissionsList) {
+            permissions.add(permissionInfo.getPermission());
+        }
+        return permissions;
+    }
+
+    private static class FakePermissionChecker implements PermissionChecker {
+        private final HashSet<String> granted;
+
+        FakePermissionChecker(String... granted) {
+            this.granted = new HashSet<>(Arrays.asList(granted));
+        }
+
+        @Override
+        public int checkPermission(@NonNull String permission) {
+            return granted.contains(permission) ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+        }
+
+        @NonNull
+        @Override
+        public int[] checkAll(@NonNull String[] permissions) {
+            int[] results = new int[permissions.length];
+            for (int i = 0; i < permissions.length; i++) {
+                results[i] = checkPermission(permissions[i]);
+            }
+            return results;
+        }
+
+        @Override
+        public boolean shouldShowRequestPermissionRationale(@NonNull Activity activity, @NonNull String permission) {
+            return false;
+        }
+    }
+}
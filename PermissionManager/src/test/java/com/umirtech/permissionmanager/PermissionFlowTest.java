@@ -0,0 +1,471 @@
+package com.umirtech.permissionmanager;
+
+import android.Manifest;
+import android.animation.AnimatorSet;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+import android.provider.Settings;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowActivity;
+import org.robolectric.shadows.ShadowContextImpl;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Headless runs of whole permission flows, {@code ./gradlew :PermissionManager:testDebugUnitTest}
+ * on any Linux box. Grants live in Robolectric's shadow application, system dialogs are answered
+ * through the activity's permission result, and slides are animated on the paused main looper.
+ * Every flow is held to a budget of checkPermission and shouldShowRequestPermissionRationale
+ * calls, permission manager screens attached and slide animator sets allocated, a flow that
+ * goes over fails the build. Calls are counted by shadows of the framework classes, so IPC made
+ * outside the library's cache, by androidx included, counts too.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, shadows = {PermissionFlowTest.ShadowCountingContextImpl.class, PermissionFlowTest.ShadowCountingActivity.class,
+        PermissionFlowTest.ShadowCountingAnimatorSet.class})
+@LooperMode(LooperMode.Mode.PAUSED)
+public class PermissionFlowTest {
+    //// One check per permission, nothing more when the same permissions are shown again ////
+    private static final int ALL_GRANTED_CHECK_BUDGET = 3;
+    private static final int REPEATED_ALL_GRANTED_CHECK_BUDGET = 0;
+    //// Three permissions and the selected photos companion, then the two the dialog touched and camera,
+    //// plus the check androidx makes before launching each of the two dialogs ////
+    private static final int PARTIAL_MEDIA_CHECK_BUDGET = 9;
+    //// Pre-check, dialog launch, dialog result and settings return, one each ////
+    private static final int SETTINGS_CHECK_BUDGET = 4;
+    //// The snapshot survives rotation, the recreated activity checks nothing ////
+    private static final int ROTATION_CHECK_BUDGET = 0;
+
+    //// Rationale is only asked to classify a denial, and for permissions stored as denied for good ////
+    private static final int PARTIAL_MEDIA_RATIONALE_BUDGET = 0;
+    private static final int SETTINGS_RATIONALE_BUDGET = 1;
+
+    private static final int SCREENS_PER_ACTIVITY_BUDGET = 1;
+    //// Slide sets are built on the first transition and reused by every later one ////
+    private static final int SLIDE_ANIMATOR_SET_BUDGET = 2;
+
+    private static final Duration SLIDE_DURATION = Duration.ofSeconds(5);
+
+    private Application application;
+    private ActivityController<FlowActivity> activityController;
+    private RecordingCallBack callBack;
+    private final Set<View> screensAttached = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    @Before
+    public void setUp() throws Exception {
+        //// Process wide state would leak grants and decisions of the previous test ////
+        resetSingleton(PermissionStatusCache.class);
+        resetSingleton(PermissionDecisionStore.class);
+        resetSingleton(PermissionStatePublisher.class);
+
+        application = ApplicationProvider.getApplicationContext();
+        activityController = Robolectric.buildActivity(FlowActivity.class).setup();
+        callBack = new RecordingCallBack();
+        watchScreens(activityController.get());
+        ShadowCountingAnimatorSet.allocations = 0;
+    }
+
+    @After
+    public void tearDown() {
+        activityController.pause().stop().destroy();
+    }
+
+    @Test
+    public void allGrantedFlow() {
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO,
+                Manifest.permission.POST_NOTIFICATIONS);
+        List<PermissionManager.PermissionInfo> permissions = permissionsOf(Manifest.permission.CAMERA,
+                Manifest.permission.RECORD_AUDIO, Manifest.permission.POST_NOTIFICATIONS);
+
+        int checkCount = getCheckCount();
+        newPermissionManager(activityController.get()).showPermissionManager(permissions, callBack);
+        assertBudget("checkPermission calls", ALL_GRANTED_CHECK_BUDGET, getCheckCount() - checkCount);
+
+        checkCount = getCheckCount();
+        RecordingCallBack repeatedCallBack = new RecordingCallBack();
+        newPermissionManager(activityController.get()).showPermissionManager(permissions, repeatedCallBack);
+        assertBudget("repeated checkPermission calls", REPEATED_ALL_GRANTED_CHECK_BUDGET, getCheckCount() - checkCount);
+
+        assertEquals(1, callBack.grantedCount);
+        assertEquals(1, repeatedCallBack.grantedCount);
+        assertBudget("screens attached", 0, screensAttached.size());
+        assertNull(findPermissionManagerView());
+    }
+
+    @Test
+    public void partialMediaFlow() {
+        List<PermissionManager.PermissionInfo> permissions = permissionsOf(Manifest.permission.READ_MEDIA_IMAGES,
+                Manifest.permission.READ_MEDIA_VIDEO, Manifest.permission.CAMERA);
+
+        int checkCount = getCheckCount();
+        int rationaleCount = ShadowCountingActivity.rationaleCalls;
+        newPermissionManager(activityController.get()).showPermissionManager(permissions, callBack);
+        ShadowCountingAnimatorSet.allocations = 0;
+
+        tapAndSlide();
+        assertEquals("Allow", getFabButton().getText().toString());
+
+        //// The user only picks some photos ////
+        tap();
+        shadowOf(application).grantPermissions(Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED);
+        answerDialog(PackageManager.PERMISSION_DENIED);
+
+        //// Video is covered by the same partial grant, camera is next ////
+        assertEquals("Next", getFabButton().getText().toString());
+        tapAndSlide();
+        tap();
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA);
+        answerDialog(PackageManager.PERMISSION_GRANTED);
+
+        assertEquals(1, callBack.grantedCount);
+        assertEquals(0, callBack.cancelCount);
+        assertNull(findPermissionManagerView());
+        assertBudget("checkPermission calls", PARTIAL_MEDIA_CHECK_BUDGET, getCheckCount() - checkCount);
+        assertBudget("shouldShowRequestPermissionRationale calls", PARTIAL_MEDIA_RATIONALE_BUDGET,
+                ShadowCountingActivity.rationaleCalls - rationaleCount);
+        assertBudget("screens attached", SCREENS_PER_ACTIVITY_BUDGET, screensAttached.size());
+        assertBudget("slide animator sets", SLIDE_ANIMATOR_SET_BUDGET, ShadowCountingAnimatorSet.allocations);
+    }
+
+    @Test
+    public void permanentDenialOpensSettings() {
+        List<PermissionManager.PermissionInfo> permissions = permissionsOf(Manifest.permission.CAMERA);
+
+        int checkCount = getCheckCount();
+        int rationaleCount = ShadowCountingActivity.rationaleCalls;
+        newPermissionManager(activityController.get()).showPermissionManager(permissions, callBack);
+        ShadowCountingAnimatorSet.allocations = 0;
+
+        tapAndSlide();
+        tap();
+        //// No rationale after a denial, the system won't show the dialog again ////
+        answerDialog(PackageManager.PERMISSION_DENIED);
+
+        Intent settingsIntent = shadowOf(activityController.get()).getNextStartedActivity();
+        assertNotNull(settingsIntent);
+        assertEquals(Settings.ACTION_APPLICATION_DETAILS_SETTINGS, settingsIntent.getAction());
+        assertEquals(Uri.fromParts("package", application.getPackageName(), null), settingsIntent.getData());
+        assertEquals(0, callBack.grantedCount);
+
+        //// Granted in the settings screen, coming back finishes the flow ////
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA);
+        activityController.pause().resume();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, callBack.grantedCount);
+        assertEquals(0, callBack.cancelCount);
+        assertNull(findPermissionManagerView());
+        assertBudget("checkPermission calls", SETTINGS_CHECK_BUDGET, getCheckCount() - checkCount);
+        assertBudget("shouldShowRequestPermissionRationale calls", SETTINGS_RATIONALE_BUDGET,
+                ShadowCountingActivity.rationaleCalls - rationaleCount);
+        assertBudget("screens attached", SCREENS_PER_ACTIVITY_BUDGET, screensAttached.size());
+        assertBudget("slide animator sets", SLIDE_ANIMATOR_SET_BUDGET, ShadowCountingAnimatorSet.allocations);
+    }
+
+    @Test
+    public void rotationKeepsFlow() {
+        PermissionFlowPlan flowPlan = PermissionFlowPlan.compile(permissionsOf(Manifest.permission.CAMERA));
+
+        newPermissionManager(activityController.get()).showPermissionManager(flowPlan, callBack);
+        tapAndSlide();
+        assertEquals("Allow", getFabButton().getText().toString());
+
+        Configuration landscape = new Configuration(activityController.get().getResources().getConfiguration());
+        landscape.orientation = Configuration.ORIENTATION_LANDSCAPE;
+        activityController.configurationChange(landscape);
+        shadowOf(Looper.getMainLooper()).idle();
+        watchScreens(activityController.get());
+
+        //// The recreated activity asks again, the flow picks up on the same slide ////
+        int checkCount = getCheckCount();
+        ShadowCountingAnimatorSet.allocations = 0;
+        RecordingCallBack recreatedCallBack = new RecordingCallBack();
+        newPermissionManager(activityController.get()).showPermissionManager(flowPlan, recreatedCallBack);
+        assertEquals("Allow", getFabButton().getText().toString());
+        assertBudget("checkPermission calls after rotation", ROTATION_CHECK_BUDGET, getCheckCount() - checkCount);
+
+        tap();
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA);
+        answerDialog(PackageManager.PERMISSION_GRANTED);
+
+        assertEquals(0, callBack.grantedCount);
+        assertEquals(0, callBack.cancelCount);
+        assertEquals(1, recreatedCallBack.grantedCount);
+        assertNull(findPermissionManagerView());
+        assertBudget("screens attached", 2 * SCREENS_PER_ACTIVITY_BUDGET, screensAttached.size());
+        assertBudget("slide animator sets after rotation", 0, ShadowCountingAnimatorSet.allocations);
+    }
+
+    @Test
+    public void secondFlowStartsOnWelcomeSlide() {
+        PermissionManager permissionManager = newPermissionManager(activityController.get());
+        permissionManager.showPermissionManager(permissionsOf(Manifest.permission.CAMERA), callBack);
+        tapAndSlide();
+        tap();
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA);
+        answerDialog(PackageManager.PERMISSION_GRANTED);
+        assertEquals(1, callBack.grantedCount);
+
+        //// The same manager asks again, its screen must not show the last slide of the first flow ////
+        RecordingCallBack secondCallBack = new RecordingCallBack();
+        permissionManager.showPermissionManager(permissionsOf(Manifest.permission.RECORD_AUDIO), secondCallBack);
+        PermissionManagerStyle style = findPermissionManagerView().getStyle();
+        assertEquals("Next", getFabButton().getText().toString());
+        List<TextView> textViews = getSlideTextViews();
+        assertEquals(style.getWelcomeText().toString(), textViews.get(0).getText().toString());
+        assertEquals(style.getIntroText().toString(), textViews.get(1).getText().toString());
+        for (TextView textView : textViews) {
+            assertEquals(0f, textView.getTranslationX(), 0f);
+        }
+
+        tapAndSlide();
+        assertEquals(Manifest.permission.RECORD_AUDIO, textViews.get(0).getText().toString());
+        assertEquals(0, secondCallBack.grantedCount);
+        assertEquals(0, secondCallBack.cancelCount);
+    }
+
+
+    private static PermissionManager newPermissionManager(AppCompatActivity activity) {
+        return new PermissionManager(activity);
+    }
+
+    /**
+     * Records every permission manager screen added to the activity, above the content as an
+     * overlay or in its place.
+     */
+    private void watchScreens(Activity activity) {
+        ViewGroup contentView = activity.findViewById(android.R.id.content);
+        ViewGroup.OnHierarchyChangeListener listener = new ViewGroup.OnHierarchyChangeListener() {
+            @Override
+            public void onChildViewAdded(View parent, View child) {
+                if (child instanceof PermissionManager.PermissionManagerView) {
+                    screensAttached.add(child);
+                }
+            }
+
+            @Override
+            public void onChildViewRemoved(View parent, View child) {
+            }
+        };
+        contentView.setOnHierarchyChangeListener(listener);
+        ((ViewGroup) contentView.getParent()).setOnHierarchyChangeListener(listener);
+    }
+
+    private static List<PermissionManager.PermissionInfo> permissionsOf(String... permissions) {
+        List<PermissionManager.PermissionInfo> permissionsList = new ArrayList<>();
+        for (String permission : permissions) {
+            PermissionManager.PermissionInfo permissionInfo = new PermissionManager.PermissionInfo(permission);
+            permissionInfo.setPermissionTag(permission);
+            permissionInfo.setPermissionInfo("Needed for " + permission);
+            permissionsList.add(permissionInfo);
+        }
+        return permissionsList;
+    }
+
+    private static int getCheckCount() {
+        return ShadowCountingContextImpl.checkPermissionCalls;
+    }
+
+    private void tap() {
+        getFabButton().performClick();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private void tapAndSlide() {
+        getFabButton().performClick();
+        shadowOf(Looper.getMainLooper()).idleFor(SLIDE_DURATION);
+    }
+
+    /**
+     * Answers the system dialog that is open, the grants must already be set in the shadow
+     * application.
+     */
+    private void answerDialog(int result) {
+        ShadowActivity.PermissionsRequest request = shadowOf(activityController.get()).getLastRequestedPermission();
+        assertNotNull("No system dialog was launched", request);
+        int[] grantResults = new int[request.requestedPermissions.length];
+        for (int i = 0; i < grantResults.length; i++) {
+            grantResults[i] = result;
+        }
+        activityController.get().onRequestPermissionsResult(request.requestCode, request.requestedPermissions, grantResults);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private ExtendedFloatingActionButton getFabButton() {
+        PermissionManager.PermissionManagerView permissionManagerView = findPermissionManagerView();
+        assertNotNull("Permission manager is not shown", permissionManagerView);
+        for (int i = 0; i < permissionManagerView.getChildCount(); i++) {
+            View child = permissionManagerView.getChildAt(i);
+            if (child instanceof ExtendedFloatingActionButton) {
+                return (ExtendedFloatingActionButton) child;
+            }
+        }
+        throw new AssertionError("Permission manager has no button");
+    }
+
+    /**
+     * @return the header and the permission info text views, in this order.
+     */
+    private List<TextView> getSlideTextViews() {
+        PermissionManager.PermissionManagerView permissionManagerView = findPermissionManagerView();
+        assertNotNull("Permission manager is not shown", permissionManagerView);
+        List<TextView> textViews = new ArrayList<>();
+        for (int i = 0; i < permissionManagerView.getChildCount(); i++) {
+            View child = permissionManagerView.getChildAt(i);
+            if (child instanceof TextView && !(child instanceof ExtendedFloatingActionButton)) {
+                textViews.add((TextView) child);
+            }
+        }
+        assertEquals(2, textViews.size());
+        return textViews;
+    }
+
+    @Nullable
+    private PermissionManager.PermissionManagerView findPermissionManagerView() {
+        return findPermissionManagerView(activityController.get().getWindow().getDecorView());
+    }
+
+    @Nullable
+    private static PermissionManager.PermissionManagerView findPermissionManagerView(View view) {
+        if (view instanceof PermissionManager.PermissionManagerView) {
+            return (PermissionManager.PermissionManagerView) view;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) view;
+            for (int i = 0; i < viewGroup.getChildCount(); i++) {
+                PermissionManager.PermissionManagerView found = findPermissionManagerView(viewGroup.getChildAt(i));
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void assertBudget(String name, int budget, int actual) {
+        assertTrue(name + ": " + actual + " over the budget of " + budget, actual <= budget);
+    }
+
+    private static void resetSingleton(Class<?> singletonClass) throws Exception {
+        Field instance = singletonClass.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+    }
+
+
+    public static class FlowActivity extends AppCompatActivity {
+        @Override
+        protected void onCreate(@Nullable Bundle savedInstanceState) {
+            setTheme(com.google.android.material.R.style.Theme_MaterialComponents_Light_NoActionBar);
+            super.onCreate(savedInstanceState);
+            setContentView(new FrameLayout(this));
+        }
+    }
+
+    private static class RecordingCallBack implements PermissionManager.PermissionResultCallBack {
+        private int grantedCount = 0;
+        private int cancelCount = 0;
+
+        @Override
+        public void onPermissionsGranted() {
+            grantedCount++;
+        }
+
+        @Override
+        public void onCancel() {
+            cancelCount++;
+        }
+    }
+
+    /**
+     * Counts the package manager checks of every context, ContextCompat.checkSelfPermission and
+     * the androidx permission contracts end up here.
+     */
+    @Implements(className = ShadowContextImpl.CLASS_NAME)
+    public static class ShadowCountingContextImpl extends ShadowContextImpl {
+        static int checkPermissionCalls = 0;
+
+        @Implementation
+        @Override
+        protected int checkPermission(String permission, int pid, int uid) {
+            checkPermissionCalls++;
+            return super.checkPermission(permission, pid, uid);
+        }
+    }
+
+    /**
+     * Counts rationale lookups, each one is a package manager round trip on a device. Everything
+     * else, recorded permission requests included, stays with ShadowActivity.
+     */
+    @Implements(Activity.class)
+    public static class ShadowCountingActivity extends ShadowActivity {
+        static int rationaleCalls = 0;
+
+        @Implementation(minSdk = Build.VERSION_CODES.M)
+        @Override
+        protected boolean shouldShowRequestPermissionRationale(String permission) {
+            rationaleCalls++;
+            return super.shouldShowRequestPermissionRationale(permission);
+        }
+    }
+
+    /**
+     * Counts every AnimatorSet built, framework and material ones included, tests reset it
+     * once the screen is attached so only the slide sets remain.
+     */
+    @Implements(AnimatorSet.class)
+    public static class ShadowCountingAnimatorSet {
+        static int allocations = 0;
+
+        @RealObject
+        private AnimatorSet realAnimatorSet;
+
+        @Implementation
+        protected void __constructor__() {
+            allocations++;
+            Shadow.invokeConstructor(AnimatorSet.class, realAnimatorSet);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.umirtech.permissionmanager;
+
+import android.Manifest;
+import android.app.Application;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Deliveries of {@link PermissionStatePublisher}, checks run inline and callbacks wait on the
+ * paused main looper like they would behind a busy main thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class PermissionStatePublisherTest {
+    private Application application;
+    private PermissionStatusCache cache;
+    private PermissionStatePublisher publisher;
+
+    @Before
+    public void setUp() throws Exception {
+        Field instance = PermissionStatePublisher.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+
+        application = ApplicationProvider.getApplicationContext();
+        cache = new PermissionStatusCache(new AndroidPermissionChecker(application));
+        publisher = PermissionStatePublisher.getInstance(cache, Runnable::run);
+    }
+
+    @Test
+    public void coldCacheDeliversInitialStateOnce() {
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA);
+        RecordingListener listener = new RecordingListener();
+
+        //// The initial check misses the cache and publishes the state it read as a change too ////
+        publisher.addListener(listener, new String[]{Manifest.permission.CAMERA});
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, listener.states.size());
+        assertEquals(Manifest.permission.CAMERA + "=true", listener.states.get(0));
+    }
+
+    @Test
+    public void changeAfterInitialStateIsDelivered() {
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA);
+        RecordingListener listener = new RecordingListener();
+        publisher.addListener(listener, new String[]{Manifest.permission.CAMERA});
+        shadowOf(Looper.getMainLooper()).idle();
+
+        shadowOf(application).denyPermissions(Manifest.permission.CAMERA);
+        cache.onPermissionChanged(Manifest.permission.CAMERA);
+        cache.checkPermission(Manifest.permission.CAMERA);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(2, listener.states.size());
+        assertEquals(Manifest.permission.CAMERA + "=false", listener.states.get(1));
+    }
+
+
+    private static class RecordingListener implements PermissionStateListener {
+        private final List<String> states = new ArrayList<>();
+
+        @Override
+        public void onPermissionStateChanged(@NonNull String permission, boolean isGranted) {
+            states.add(permission + "=" + isGranted);
+        }
+    }
+}
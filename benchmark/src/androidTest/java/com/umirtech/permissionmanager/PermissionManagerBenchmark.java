@@ -0,0 +1,146 @@
+package com.umirtech.permissionmanager;
+
+import android.Manifest;
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-device benchmarks of the permission evaluation hot path, view construction and the slide
+ * sequence. Run with {@code ./gradlew :benchmark:connectedReleaseAndroidTest}, results are
+ * written to benchmark/build/outputs/connected_android_test_additional_output.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PermissionManagerBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private List<PermissionManager.PermissionInfo> grantedPermissions;
+    private List<PermissionManager.PermissionInfo> missingPermissions;
+    private PermissionFlowPlan missingFlowPlan;
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                com.google.android.material.R.style.Theme_MaterialComponents_Light_NoActionBar);
+
+        grantedPermissions = new ArrayList<>();
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.INTERNET));
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.ACCESS_NETWORK_STATE));
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.VIBRATE));
+
+        missingPermissions = new ArrayList<>(grantedPermissions);
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.CAMERA));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.RECORD_AUDIO));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.READ_MEDIA_IMAGES));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.READ_MEDIA_VIDEO));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.ACCESS_FINE_LOCATION));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.ACCESS_COARSE_LOCATION));
+        missingFlowPlan = PermissionFlowPlan.compile(missingPermissions);
+    }
+
+    @Test
+    public void allGrantedPreCheck() {
+        PermissionStatusCache cache = PermissionStatusCache.getInstance(context);
+        PermissionStateSnapshot.isAllSatisfied(cache, grantedPermissions);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            PermissionStateSnapshot.isAllSatisfied(cache, grantedPermissions);
+        }
+    }
+
+    @Test
+    public void snapshotResolveColdCache() {
+        PermissionStatusCache cache = PermissionStatusCache.getInstance(context);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            cache.invalidateAll();
+            state.resumeTiming();
+
+            missingFlowPlan.collectMissing(PermissionStateSnapshot.resolve(cache, missingFlowPlan.getSteps()));
+        }
+    }
+
+    @Test
+    public void snapshotResolveWarmCache() {
+        PermissionStatusCache cache = PermissionStatusCache.getInstance(context);
+        PermissionStateSnapshot.resolve(cache, missingFlowPlan.getSteps());
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            missingFlowPlan.collectMissing(PermissionStateSnapshot.resolve(cache, missingFlowPlan.getSteps()));
+        }
+    }
+
+    @Test
+    public void planCompile() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            PermissionFlowPlan.compile(missingPermissions);
+        }
+    }
+
+    @Test
+    public void nextPendingIndex() {
+        PermissionStateSnapshot snapshot = PermissionStateSnapshot.resolve(PermissionStatusCache.getInstance(context),
+                missingFlowPlan.getSteps());
+        List<PermissionManager.PermissionInfo> pending = missingFlowPlan.collectMissing(snapshot);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (int index = missingFlowPlan.nextPendingIndex(pending, 0, snapshot); index < pending.size();
+                 index = missingFlowPlan.nextPendingIndex(pending, index + 1, snapshot)) {
+                // Walks every slide the flow would show
+            }
+        }
+    }
+
+    @Test
+    public void viewConstruction() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            BenchmarkState state = benchmarkRule.getState();
+            while (state.keepRunning()) {
+                new PermissionManager.PermissionManagerView(context);
+            }
+        });
+    }
+
+    @Test
+    public void slideTransition() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            PermissionManager.PermissionManagerView view = new PermissionManager.PermissionManagerView(context);
+            view.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(2340, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, 1080, 2340);
+
+            PermissionManager.PermissionManagerView.OnSlideChangeListener listener = (headerTextView, permissionInfoTextView) -> {
+                headerTextView.setText("Camera");
+                permissionInfoTextView.setText("Needed to take pictures");
+                return true;
+            };
+
+            BenchmarkState state = benchmarkRule.getState();
+            while (state.keepRunning()) {
+                view.slideNext(listener);
+                view.endSlide();
+            }
+        });
+    }
+}
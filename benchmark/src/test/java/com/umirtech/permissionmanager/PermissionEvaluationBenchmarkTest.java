@@ -0,0 +1,226 @@
+package com.umirtech.permissionmanager;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageManager;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * JVM microbenchmarks of the grant evaluation logic, runnable on any Linux box with
+ * {@code ./gradlew :benchmark:testReleaseUnitTest -Pbenchmark}. Permission state comes from an
+ * in-memory {@link PermissionChecker}, or Robolectric's shadow application for the package
+ * manager backed one. Numbers are printed as ns/op and compared with the baseline checked in
+ * under benchmark/baselines, {@code -Pbenchmark.updateBaseline} rewrites it instead.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PermissionEvaluationBenchmarkTest {
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 200_000;
+    //// JVM timings are noisy, only a clear regression should fail ////
+    private static final double TOLERANCE = 0.5;
+    private static final String BASELINE_COMMENT = "ns/op of PermissionEvaluationBenchmarkTest,"
+            + " regenerate with ./gradlew :benchmark:testReleaseUnitTest -Pbenchmark -Pbenchmark.updateBaseline";
+    private static final Properties MEASURED = new Properties();
+
+    //// Every result is written here, so the JIT can't drop the measured work ////
+    private static volatile Object sink;
+
+    private Application application;
+    private FakePermissionChecker fakePermissionChecker;
+    private List<PermissionManager.PermissionInfo> grantedPermissions;
+    private List<PermissionManager.PermissionInfo> missingPermissions;
+    private PermissionFlowPlan missingFlowPlan;
+
+    @Before
+    public void setUp() {
+        String[] grants = {
+                Manifest.permission.CAMERA,
+                Manifest.permission.RECORD_AUDIO,
+                Manifest.permission.READ_CONTACTS,
+                Manifest.permission.READ_CALENDAR,
+                Manifest.permission.POST_NOTIFICATIONS,
+                Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED,
+                Manifest.permission.ACCESS_COARSE_LOCATION};
+        application = ApplicationProvider.getApplicationContext();
+        shadowOf(application).grantPermissions(grants);
+        fakePermissionChecker = new FakePermissionChecker(grants);
+
+        grantedPermissions = new ArrayList<>();
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.CAMERA));
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.RECORD_AUDIO));
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.READ_CONTACTS));
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.READ_CALENDAR));
+        grantedPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.POST_NOTIFICATIONS));
+
+        //// Media is partially granted, precise location downgraded to approximate, SMS missing ////
+        missingPermissions = new ArrayList<>(grantedPermissions);
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.READ_MEDIA_IMAGES));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.READ_MEDIA_VIDEO));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.ACCESS_FINE_LOCATION));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.READ_SMS));
+        missingPermissions.add(new PermissionManager.PermissionInfo(Manifest.permission.SEND_SMS));
+        missingFlowPlan = PermissionFlowPlan.compile(missingPermissions);
+    }
+
+    @AfterClass
+    public static void writeBaseline() throws IOException {
+        if (isUpdatingBaseline() && !MEASURED.isEmpty()) {
+            //// Benchmarks filtered out of this run keep their old baseline ////
+            Properties baseline = getBaselineFile().exists() ? loadBaseline() : new Properties();
+            baseline.putAll(MEASURED);
+            try (OutputStream outputStream = new FileOutputStream(getBaselineFile())) {
+                baseline.store(outputStream, BASELINE_COMMENT);
+            }
+        }
+    }
+
+    @Test
+    public void allGrantedPreCheck() throws IOException {
+        measure("allGrantedPreCheck", () -> PermissionStateSnapshot.isAllSatisfied(fakePermissionChecker, grantedPermissions));
+    }
+
+    @Test
+    public void allGrantedPreCheckCached() throws IOException {
+        PermissionStatusCache cache = new PermissionStatusCache(new AndroidPermissionChecker(application));
+        measure("allGrantedPreCheckCached", () -> PermissionStateSnapshot.isAllSatisfied(cache, grantedPermissions));
+    }
+
+    @Test
+    public void planCompile() throws IOException {
+        measure("planCompile", () -> PermissionFlowPlan.compile(missingPermissions));
+    }
+
+    @Test
+    public void snapshotResolve() throws IOException {
+        measure("snapshotResolve", () -> missingFlowPlan.collectMissing(
+                PermissionStateSnapshot.resolve(fakePermissionChecker, missingFlowPlan.getSteps())));
+    }
+
+    @Test
+    public void snapshotResolveColdCache() throws IOException {
+        PermissionStatusCache cache = new PermissionStatusCache(new AndroidPermissionChecker(application));
+        measure("snapshotResolveColdCache", () -> {
+            cache.invalidateAll();
+            return missingFlowPlan.collectMissing(PermissionStateSnapshot.resolve(cache, missingFlowPlan.getSteps()));
+        });
+    }
+
+    @Test
+    public void nextPendingIndex() throws IOException {
+        PermissionStateSnapshot snapshot = PermissionStateSnapshot.resolve(fakePermissionChecker, missingFlowPlan.getSteps());
+        List<PermissionManager.PermissionInfo> pending = missingFlowPlan.collectMissing(snapshot);
+        measure("nextPendingIndex", () -> {
+            //// Walks every slide the flow would show ////
+            int slides = 0;
+            for (int index = missingFlowPlan.nextPendingIndex(pending, 0, snapshot); index < pending.size();
+                 index = missingFlowPlan.nextPendingIndex(pending, index + 1, snapshot)) {
+                slides++;
+            }
+            return slides;
+        });
+    }
+
+    /**
+     * Fails when the operation got slower than its checked in baseline by more than the
+     * tolerance, or records it when the baseline is being updated.
+     */
+    private static void measure(String name, Operation operation) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink = operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sink = operation.run();
+        }
+        double nanosPerOperation = (double) (System.nanoTime() - start) / MEASURED_ITERATIONS;
+        System.out.println(String.format(Locale.US, "%s: %.1f ns/op", name, nanosPerOperation));
+
+        if (isUpdatingBaseline()) {
+            MEASURED.setProperty(name, String.format(Locale.US, "%.1f", nanosPerOperation));
+            return;
+        }
+        String baseline = loadBaseline().getProperty(name);
+        assertNotNull("No baseline for " + name + ", run with -Pbenchmark.updateBaseline", baseline);
+        double limit = Double.parseDouble(baseline) * (1 + TOLERANCE);
+        assertTrue(String.format(Locale.US, "%s: %.1f ns/op, baseline %s ns/op", name, nanosPerOperation, baseline),
+                nanosPerOperation <= limit);
+    }
+
+    private static boolean isUpdatingBaseline() {
+        return Boolean.getBoolean("benchmark.updateBaseline");
+    }
+
+    private static File getBaselineFile() {
+        String path = System.getProperty("benchmark.baseline");
+        assertNotNull("benchmark.baseline is not set, run through :benchmark:testReleaseUnitTest -Pbenchmark", path);
+        return new File(path);
+    }
+
+    private static Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream inputStream = new FileInputStream(getBaselineFile())) {
+            baseline.load(inputStream);
+        }
+        return baseline;
+    }
+
+    private interface Operation {
+        Object run();
+    }
+
+    private static class FakePermissionChecker implements PermissionChecker {
+        private final HashSet<String> grantedPermissions = new HashSet<>();
+
+        FakePermissionChecker(String... grantedPermissions) {
+            this.grantedPermissions.addAll(Arrays.asList(grantedPermissions));
+        }
+
+        @Override
+        public int checkPermission(@NonNull String permission) {
+            return grantedPermissions.contains(permission) ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+        }
+
+        @NonNull
+        @Override
+        public int[] checkAll(@NonNull String[] permissions) {
+            int[] results = new int[permissions.length];
+            for (int i = 0; i < permissions.length; i++) {
+                results[i] = checkPermission(permissions[i]);
+            }
+            return results;
+        }
+
+        @Override
+        public boolean shouldShowRequestPermissionRationale(@NonNull Activity activity, @NonNull String permission) {
+            return true;
+        }
+    }
+}